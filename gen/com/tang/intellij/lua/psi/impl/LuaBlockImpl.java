@@ -8,10 +8,9 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.util.PsiTreeUtil;
 import static com.tang.intellij.lua.psi.LuaTypes.*;
-import com.intellij.extapi.psi.ASTWrapperPsiElement;
 import com.tang.intellij.lua.psi.*;
 
-public class LuaBlockImpl extends ASTWrapperPsiElement implements LuaBlock {
+public class LuaBlockImpl extends LuaBlockScopeImpl implements LuaBlock {
 
   public LuaBlockImpl(ASTNode node) {
     super(node);
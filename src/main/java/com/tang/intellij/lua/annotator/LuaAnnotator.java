@@ -24,14 +24,14 @@ import com.intellij.openapi.roots.FileIndexFacade;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReference;
-import com.intellij.psi.search.searches.ReferencesSearch;
-import com.intellij.util.Query;
 import com.tang.intellij.lua.Constants;
 import com.tang.intellij.lua.comment.psi.*;
 import com.tang.intellij.lua.highlighting.LuaHighlightingData;
+import com.tang.intellij.lua.project.LuaGlobalOrigins;
 import com.tang.intellij.lua.psi.*;
 import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * LuaAnnotator
@@ -121,8 +121,7 @@ public class LuaAnnotator extends LuaVisitor implements Annotator {
             if (o.textMatches(Constants.WORD_UNDERLINE))
                 return;
 
-            Query<PsiReference> search = ReferencesSearch.search(o, o.getUseScope());
-            if (search.findFirst() == null) {
+            if (!LuaLocalUsages.getInstance(o.getContainingFile()).isUsed(o)) {
                 myHolder.createInfoAnnotation(o, "Unused parameter : " + o.getText());
                 //annotation.setTextAttributes(CodeInsightColors.WEAK_WARNING_ATTRIBUTES);
             } else {
@@ -135,20 +134,28 @@ public class LuaAnnotator extends LuaVisitor implements Annotator {
         public void visitNameExpr(@NotNull LuaNameExpr o) {
             PsiElement id = o.getFirstChild();
 
-            PsiElement res = LuaPsiResolveUtil.resolve(o, new SearchContext(o.getProject()));
+            PsiElement res = LuaPsiResolveUtil.resolveLocal(o, new SearchContext(o.getProject()));
             if (res != null) { //std api highlighting
                 PsiFile containingFile = res.getContainingFile();
                 if (FileIndexFacade.getInstance(o.getProject()).isInLibraryClasses(containingFile.getVirtualFile())) {
-                    Annotation annotation = myHolder.createInfoAnnotation(o, null);
-                    annotation.setTextAttributes(LuaHighlightingData.STD_API);
+                    createStdApiAnnotation(o);
                     return;
                 }
+            } else {
+                // 全局名字先查来源缓存，库中的名字不需要 resolve
+                LuaGlobalOrigins.Origin origin = LuaGlobalOrigins.getInstance(o.getProject()).getOrigin(o.getName(), () -> resolve(o));
+                if (origin != null && origin.isLibrary()) {
+                    createStdApiAnnotation(o);
+                    return;
+                }
+                // 项目中的名字，resolve 的结果在 ResolveCache 中
+                res = resolve(o);
             }
 
             if (res instanceof LuaParamNameDef) {
                 Annotation annotation = myHolder.createInfoAnnotation(o, null);
                 annotation.setTextAttributes(LuaHighlightingData.PARAMETER);
-                checkUpValue(o);
+                checkUpValue(o, res);
             } else if (res instanceof LuaGlobalFuncDef) {
                 Annotation annotation = myHolder.createInfoAnnotation(o, null);
                 annotation.setTextAttributes(LuaHighlightingData.GLOBAL_FUNCTION);
@@ -156,11 +163,11 @@ public class LuaAnnotator extends LuaVisitor implements Annotator {
                 if (id.textMatches(Constants.WORD_SELF)) {
                     Annotation annotation = myHolder.createInfoAnnotation(o, null);
                     annotation.setTextAttributes(LuaHighlightingData.SELF);
-                    checkUpValue(o);
+                    checkUpValue(o, res);
                 } else if (res instanceof LuaNameDef || res instanceof LuaLocalFuncDef) { //Local
                     Annotation annotation = myHolder.createInfoAnnotation(o, null);
                     annotation.setTextAttributes(LuaHighlightingData.LOCAL_VAR);
-                    checkUpValue(o);
+                    checkUpValue(o, res);
                 } else/* if (res instanceof LuaNameRef) */ { // 未知的，视为Global
                     Annotation annotation = myHolder.createInfoAnnotation(o, null);
                     annotation.setTextAttributes(LuaHighlightingData.GLOBAL_VAR);
@@ -168,8 +175,19 @@ public class LuaAnnotator extends LuaVisitor implements Annotator {
             }
         }
 
-        private void checkUpValue(@NotNull LuaNameExpr o) {
-            boolean upValue = LuaPsiResolveUtil.isUpValue(o, new SearchContext(o.getProject()));
+        @Nullable
+        private PsiElement resolve(@NotNull LuaNameExpr o) {
+            PsiReference reference = o.getReference();
+            return reference == null ? null : reference.resolve();
+        }
+
+        private void createStdApiAnnotation(@NotNull LuaNameExpr o) {
+            Annotation annotation = myHolder.createInfoAnnotation(o, null);
+            annotation.setTextAttributes(LuaHighlightingData.STD_API);
+        }
+
+        private void checkUpValue(@NotNull LuaNameExpr o, @Nullable PsiElement res) {
+            boolean upValue = LuaPsiResolveUtil.isUpValue(o, res);
             if (upValue) {
                 Annotation annotation = myHolder.createInfoAnnotation(o, null);
                 annotation.setTextAttributes(LuaHighlightingData.UP_VALUE);
@@ -22,9 +22,12 @@ import com.intellij.codeInsight.daemon.LineMarkerProvider;
 import com.intellij.codeInsight.navigation.NavigationGutterIconBuilder;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiNamedElement;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiTreeUtil;
@@ -37,14 +40,14 @@ import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.psi.*;
 import com.tang.intellij.lua.psi.search.LuaClassInheritorsSearch;
 import com.tang.intellij.lua.psi.search.LuaOverridingMethodsSearch;
+import com.tang.intellij.lua.search.LuaClassHierarchy;
 import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.LuaClassMethodStub;
 import com.tang.intellij.lua.stubs.index.LuaClassMethodIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 /**
  * line marker
@@ -100,40 +103,64 @@ public class LuaLineMarkerProvider implements LineMarkerProvider {
         }
     };
 
-    private void collectNavigationMarkers(@NotNull PsiElement element, Collection<? super LineMarkerInfo> result) {
+    /**
+     * 一个类在一次 collectSlowLineMarkers 中共用的父类方法和子类方法
+     * 类中所有方法的 override / overridden 标记都从这里得到，不再每个方法搜索一次
+     */
+    private static class ClassMarkerInfo {
+        // 方法名 -> 最近的父类名和父类中的同名方法
+        private final Map<String, Pair<String, LuaClassMethodDef>> superMethods = new HashMap<>();
+        // 所有子类（包括间接子类）中定义的方法名
+        private final Set<String> inheritorMethods = new HashSet<>();
+        private final boolean hasInheritors;
+
+        ClassMarkerInfo(@NotNull LuaType type, @NotNull SearchContext context) {
+            LuaClassMethodIndex index = LuaClassMethodIndex.getInstance();
+            for (LuaType superType : type.getSuperClasses(context)) {
+                ProgressManager.checkCanceled();
+                String superTypeName = superType.getClassName();
+                for (LuaClassMethodDef superMethod : index.get(superTypeName, context.getProject(), context.getScope())) {
+                    String name = superMethod.getName();
+                    if (name != null)
+                        superMethods.putIfAbsent(name, Pair.create(superTypeName, superMethod));
+                }
+            }
+            List<LuaClassHierarchy.ClassNode> inheritors = LuaClassHierarchy.getInstance(context.getProject()).getInheritors(type.getClassName(), context);
+            for (LuaClassHierarchy.ClassNode inheritor : inheritors) {
+                ProgressManager.checkCanceled();
+                for (LuaClassMethodDef method : index.get(inheritor.getName(), context.getProject(), context.getScope())) {
+                    String name = method.getName();
+                    if (name != null)
+                        inheritorMethods.add(name);
+                }
+            }
+            hasInheritors = !inheritors.isEmpty();
+        }
+    }
+
+    private void collectNavigationMarkers(@NotNull PsiElement element, Collection<? super LineMarkerInfo> result, @NotNull SearchContext context, @NotNull Map<String, ClassMarkerInfo> classInfoMap) {
         if (element instanceof LuaClassMethodName) {
             LuaClassMethodName classMethodName = (LuaClassMethodName) element;
             LuaClassMethodDef methodDef = PsiTreeUtil.getParentOfType(element, LuaClassMethodDef.class);
             assert methodDef != null;
-            Project project = methodDef.getProject();
-            SearchContext context = new SearchContext(project);
             LuaType type = methodDef.getClassType(context);
+            String methodName = methodDef.getName();
+            if (type == null || methodName == null)
+                return;
+            ClassMarkerInfo classInfo = classInfoMap.computeIfAbsent(type.getClassName(), k -> new ClassMarkerInfo(type, context));
 
             //OverridingMethod
-            PsiElement classMethodNameId = classMethodName.getId();
-            if (type != null) {
-                String methodName = methodDef.getName();
-                assert methodName != null;
-                LuaType superType = type.getSuperClass(context);
-
-                while (superType != null) {
-                    String superTypeName = superType.getClassName();
-                    LuaClassMethodDef superMethod = LuaClassMethodIndex.findMethodWithName(superTypeName, methodName, context);
-                    if (superMethod != null) {
-                        NavigationGutterIconBuilder<PsiElement> builder =
-                                NavigationGutterIconBuilder.create(AllIcons.Gutter.OverridingMethod)
-                                        .setTargets(superMethod)
-                                        .setTooltipText("Override in " + superTypeName);
-                        result.add(builder.createLineMarkerInfo(classMethodNameId));
-                        break;
-                    }
-                    superType = superType.getSuperClass(context);
-                }
+            Pair<String, LuaClassMethodDef> superMethod = classInfo.superMethods.get(methodName);
+            if (superMethod != null) {
+                NavigationGutterIconBuilder<PsiElement> builder =
+                        NavigationGutterIconBuilder.create(AllIcons.Gutter.OverridingMethod)
+                                .setTargets(superMethod.second)
+                                .setTooltipText("Override in " + superMethod.first);
+                result.add(builder.createLineMarkerInfo(classMethodName.getId()));
             }
 
             // OverridenMethod
-            Query<LuaClassMethodDef> search = LuaOverridingMethodsSearch.search(methodDef);
-            if (search.findFirst() != null) {
+            if (classInfo.inheritorMethods.contains(methodName)) {
                 result.add(new LineMarkerInfo<>(classMethodName,
                         classMethodName.getTextRange(),
                         AllIcons.Gutter.OverridenMethod,
@@ -152,9 +179,8 @@ public class LuaLineMarkerProvider implements LineMarkerProvider {
         else if (element instanceof LuaDocClassDef) {
             LuaDocClassDef docClassDef = (LuaDocClassDef) element;
             LuaType classType = docClassDef.getClassType();
-            Project project = element.getProject();
-            Query<LuaDocClassDef> query = LuaClassInheritorsSearch.search(GlobalSearchScope.allScope(project), project, classType.getClassName());
-            if (query.findFirst() != null) {
+            ClassMarkerInfo classInfo = classInfoMap.computeIfAbsent(classType.getClassName(), k -> new ClassMarkerInfo(classType, context));
+            if (classInfo.hasInheritors) {
                 result.add(new LineMarkerInfo<>(docClassDef,
                         docClassDef.getTextRange(),
                         AllIcons.Gutter.OverridenMethod,
@@ -178,7 +204,7 @@ public class LuaLineMarkerProvider implements LineMarkerProvider {
         else if (element instanceof LuaCallExpr) {
             LuaCallExpr callExpr = (LuaCallExpr) element;
             LuaExpr expr = callExpr.getExpr();
-            PsiReference reference = expr.getReference();
+            PsiReference reference = mayBeRecursiveCall(callExpr) ? expr.getReference() : null;
             if (reference != null) {
                 PsiElement resolve = reference.resolve();
                 if (resolve != null) {
@@ -224,6 +250,26 @@ public class LuaLineMarkerProvider implements LineMarkerProvider {
         }
     }
 
+    /**
+     * 只看名字的预判：被调用的名字和外层某个函数同名时才有可能是递归调用
+     * 名字不同的调用不需要 resolve
+     */
+    private static boolean mayBeRecursiveCall(@NotNull LuaCallExpr callExpr) {
+        LuaExpr expr = callExpr.getExpr();
+        if (!(expr instanceof PsiNamedElement))
+            return false;
+        String name = ((PsiNamedElement) expr).getName();
+        if (name == null)
+            return false;
+        LuaFuncBodyOwner bodyOwner = PsiTreeUtil.getParentOfType(callExpr, LuaFuncBodyOwner.class);
+        while (bodyOwner != null) {
+            if (bodyOwner instanceof PsiNamedElement && name.equals(((PsiNamedElement) bodyOwner).getName()))
+                return true;
+            bodyOwner = PsiTreeUtil.getParentOfType(bodyOwner, LuaFuncBodyOwner.class);
+        }
+        return false;
+    }
+
     @Nullable
     @Override
     public LineMarkerInfo getLineMarkerInfo(@NotNull PsiElement psiElement) {
@@ -232,8 +278,13 @@ public class LuaLineMarkerProvider implements LineMarkerProvider {
 
     @Override
     public void collectSlowLineMarkers(@NotNull List<PsiElement> list, @NotNull Collection<LineMarkerInfo> collection) {
+        if (list.isEmpty())
+            return;
+        SearchContext context = new SearchContext(list.get(0).getProject());
+        Map<String, ClassMarkerInfo> classInfoMap = new HashMap<>();
         for (PsiElement element : list) {
-            collectNavigationMarkers(element, collection);
+            ProgressManager.checkCanceled();
+            collectNavigationMarkers(element, collection, context, classInfoMap);
         }
     }
 }
@@ -21,6 +21,7 @@ import com.intellij.codeInsight.hints.InlayInfo;
 import com.intellij.codeInsight.hints.InlayParameterHintsProvider;
 import com.intellij.lang.Language;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiReference;
 import com.tang.intellij.lua.Constants;
 import com.tang.intellij.lua.psi.*;
 import com.tang.intellij.lua.search.SearchContext;
@@ -44,7 +45,14 @@ public class LuaParameterHintsProvider implements InlayParameterHintsProvider {
         if (psiElement instanceof LuaCallExpr) {
             LuaCallExpr callExpr = (LuaCallExpr) psiElement;
             LuaParamInfo[] parameters = null;
-            LuaFuncBodyOwner methodDef = callExpr.resolveFuncBodyOwner(new SearchContext(psiElement.getProject()));
+            // 先走 ResolveCache ，解析不到函数体再完整推断
+            LuaFuncBodyOwner methodDef;
+            PsiReference reference = callExpr.getExpr().getReference();
+            PsiElement resolve = reference == null ? null : reference.resolve();
+            if (resolve instanceof LuaFuncBodyOwner)
+                methodDef = (LuaFuncBodyOwner) resolve;
+            else
+                methodDef = callExpr.resolveFuncBodyOwner(new SearchContext(psiElement.getProject()));
 
             // 是否是 inst:method() 被用为 inst.method(self) 形式
             boolean isInstanceMethodUsedAsStaticMethod = false;
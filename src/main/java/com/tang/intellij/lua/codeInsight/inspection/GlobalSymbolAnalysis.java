@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.codeInsight.inspection;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.tang.intellij.lua.psi.LuaGlobalFuncDef;
+import com.tang.intellij.lua.psi.LuaGlobalVar;
+import com.tang.intellij.lua.psi.LuaNameExpr;
+import com.tang.intellij.lua.search.LuaGlobalSymbolTable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 整个项目的全局符号检查：没有定义的全局名字、没有被使用的全局定义、重复的全局函数
+ * 需要所有文件的引用才能得出结果，所以只在 Inspect Code 中运行
+ */
+public class GlobalSymbolAnalysis extends GlobalInspectionTool {
+
+    @Override
+    public boolean isGraphNeeded() {
+        return false;
+    }
+
+    @Override
+    public boolean isReadActionNeeded() {
+        // LuaGlobalSymbolTable 在多个线程中各自获取 read action
+        return false;
+    }
+
+    @Override
+    public void runInspection(@NotNull AnalysisScope scope,
+                              @NotNull InspectionManager manager,
+                              @NotNull GlobalInspectionContext globalContext,
+                              @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
+        Project project = globalContext.getProject();
+        LuaGlobalSymbolTable table = LuaGlobalSymbolTable.build(project, ProgressManager.getInstance().getProgressIndicator());
+        ApplicationManager.getApplication().runReadAction(() -> {
+            PsiManager psiManager = PsiManager.getInstance(project);
+            for (VirtualFile file : table.getFilesWithUndefinedUsages()) {
+                ProgressManager.checkCanceled();
+                if (!file.isValid() || !scope.contains(file))
+                    continue;
+                PsiFile psiFile = psiManager.findFile(file);
+                if (psiFile == null)
+                    continue;
+                for (int offset : table.getUndefinedUsages(file)) {
+                    LuaNameExpr nameExpr = PsiTreeUtil.findElementOfClassAtOffset(psiFile, offset, LuaNameExpr.class, true);
+                    if (nameExpr != null)
+                        report(globalContext, manager, problemDescriptionsProcessor, nameExpr, "Undefined global '" + nameExpr.getName() + "'");
+                }
+            }
+
+            table.processProjectDefinitions((name, vars, funcs) -> {
+                boolean unused = !table.isUsed(name);
+                boolean duplicate = funcs.size() > 1;
+                if (unused) {
+                    for (LuaGlobalVar var : vars) {
+                        if (isInScope(scope, var))
+                            report(globalContext, manager, problemDescriptionsProcessor, var, "Unused global '" + name + "'");
+                    }
+                }
+                for (LuaGlobalFuncDef func : funcs) {
+                    if (!isInScope(scope, func))
+                        continue;
+                    PsiElement identifier = func.getNameIdentifier();
+                    PsiElement element = identifier == null ? func : identifier;
+                    if (unused)
+                        report(globalContext, manager, problemDescriptionsProcessor, element, "Unused global function '" + name + "'");
+                    if (duplicate)
+                        report(globalContext, manager, problemDescriptionsProcessor, element, "Duplicate global function '" + name + "'");
+                }
+            });
+        });
+    }
+
+    private static boolean isInScope(@NotNull AnalysisScope scope, @NotNull PsiElement element) {
+        PsiFile file = element.getContainingFile();
+        VirtualFile virtualFile = file == null ? null : file.getVirtualFile();
+        return virtualFile != null && scope.contains(virtualFile);
+    }
+
+    private static void report(@NotNull GlobalInspectionContext globalContext,
+                               @NotNull InspectionManager manager,
+                               @NotNull ProblemDescriptionsProcessor processor,
+                               @NotNull PsiElement element,
+                               @NotNull String message) {
+        RefElement refElement = globalContext.getRefManager().getReference(element.getContainingFile());
+        if (refElement != null) {
+            ProblemDescriptor descriptor = manager.createProblemDescriptor(element, message, false, LocalQuickFix.EMPTY_ARRAY, ProblemHighlightType.GENERIC_ERROR_OR_WARNING);
+            processor.addProblemElement(refElement, descriptor);
+        }
+    }
+}
@@ -13,9 +13,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.PsiReference;
-import com.intellij.psi.search.searches.ReferencesSearch;
-import com.intellij.util.Query;
 import com.tang.intellij.lua.Constants;
 import com.tang.intellij.lua.psi.*;
 import org.jetbrains.annotations.Nls;
@@ -44,8 +41,7 @@ public class RemoveUnusedLocal extends LocalInspectionTool {
                         if (name.textMatches(Constants.WORD_UNDERLINE))
                             return;
 
-                        Query<PsiReference> search = ReferencesSearch.search(name, name.getUseScope());
-                        if (search.findFirst() == null) {
+                        if (!LuaLocalUsages.getInstance(o.getContainingFile()).isUsed(name)) {
                             int offset = name.getNode().getStartOffset() - o.getNode().getStartOffset();
                             TextRange textRange = new TextRange(offset, offset + name.getTextLength());
                             holder.registerProblem(o, textRange,"Remove unused local", new Fix());
@@ -59,8 +55,7 @@ public class RemoveUnusedLocal extends LocalInspectionTool {
                 PsiElement name = o.getNameIdentifier();
 
                 if (name != null) {
-                    Query<PsiReference> search = ReferencesSearch.search(o, o.getUseScope());
-                    if (search.findFirst() == null) {
+                    if (!LuaLocalUsages.getInstance(o.getContainingFile()).isUsed(o)) {
                         int offset = name.getNode().getStartOffset() - o.getNode().getStartOffset();
                         TextRange textRange = new TextRange(offset, offset + name.getTextLength());
 
@@ -121,7 +121,7 @@ public class LuaDocPsiImplUtil {
         if (typeList != null) {
             List<LuaDocTypeSet> typeSetList = typeList.getTypeSetList();
             LuaDocTypeSet docTypeSet = typeSetList.get(index);
-            resolveDocTypeSet(docTypeSet, typeSet, context);
+            typeSet = resolveDocTypeSet(docTypeSet, typeSet, context);
         }
         return typeSet;
     }
@@ -133,9 +133,9 @@ public class LuaDocPsiImplUtil {
             for (LuaDocClassNameRef classNameRef : classNameRefList) {
                 LuaDocClassDef def = LuaClassIndex.find(classNameRef.getText(), context);
                 if (def != null) {
-                    typeSet.addType(def.getClassType());
+                    typeSet = typeSet.union(def.getClassType());
                 } else {
-                    typeSet.addType(LuaType.create(classNameRef.getText(), null));
+                    typeSet = typeSet.union(LuaType.create(classNameRef.getText(), null));
                 }
             }
         }
@@ -194,15 +194,16 @@ public class LuaDocPsiImplUtil {
             if (supperRef != null)
                 superClassName = supperRef.getText();
 
-            luaType = LuaType.create(clazzName, superClassName);
-
+            String aliasName = null;
             LuaCommentOwner owner = LuaCommentUtil.findOwner(classDef);
             if (owner instanceof LuaAssignStat) {
                 LuaAssignStat assignStat = (LuaAssignStat) owner;
                 LuaVarList varList = assignStat.getVarList();
                 LuaVar var = varList.getVarList().get(0);
-                luaType.setAliasName(var.getText());
+                aliasName = var.getText();
             }
+
+            luaType = LuaType.create(clazzName, superClassName, aliasName);
         }
         return luaType;
     }
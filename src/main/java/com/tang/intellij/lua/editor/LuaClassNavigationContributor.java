@@ -16,11 +16,18 @@
 
 package com.tang.intellij.lua.editor;
 
+import com.intellij.navigation.ChooseByNameContributorEx;
 import com.intellij.navigation.GotoClassContributor;
 import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.FindSymbolParameters;
+import com.intellij.util.indexing.IdFilter;
 import com.tang.intellij.lua.comment.psi.LuaDocClassDef;
-import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.index.LuaClassIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -29,9 +36,10 @@ import java.util.Collection;
 
 /**
  * Goto Class
+ * 直接遍历索引的 key，不复制成数组
  * Created by TangZX on 2016/12/12.
  */
-public class LuaClassNavigationContributor implements GotoClassContributor {
+public class LuaClassNavigationContributor implements GotoClassContributor, ChooseByNameContributorEx {
     @Nullable
     @Override
     public String getQualifiedName(NavigationItem navigationItem) {
@@ -44,20 +52,31 @@ public class LuaClassNavigationContributor implements GotoClassContributor {
         return ".";
     }
 
+    @Override
+    public void processNames(@NotNull Processor<String> processor, @NotNull GlobalSearchScope scope, @Nullable IdFilter filter) {
+        StubIndex.getInstance().processAllKeys(LuaClassIndex.KEY, processor, scope, filter);
+    }
+
+    @Override
+    public void processElementsWithName(@NotNull String name, @NotNull Processor<NavigationItem> processor, @NotNull FindSymbolParameters parameters) {
+        StubIndex.getInstance().processElements(LuaClassIndex.KEY, name, parameters.getProject(),
+                parameters.getSearchScope(), parameters.getIdFilter(), LuaDocClassDef.class, processor::process);
+    }
+
     @NotNull
     @Override
-    public String[] getNames(Project project, boolean b) {
-        Collection<String> allClasses = LuaClassIndex.getInstance().getAllKeys(project);
-        return allClasses.toArray(new String[allClasses.size()]);
+    public String[] getNames(Project project, boolean includeNonProjectItems) {
+        CommonProcessors.CollectProcessor<String> processor = new CommonProcessors.CollectProcessor<>();
+        processNames(processor, FindSymbolParameters.searchScopeFor(project, includeNonProjectItems), null);
+        return ArrayUtil.toStringArray(processor.getResults());
     }
 
     @NotNull
     @Override
-    public NavigationItem[] getItemsByName(String s, String s1, Project project, boolean b) {
-        LuaDocClassDef classDef = LuaClassIndex.find(s, new SearchContext(project));
-        if (classDef == null)
-            return new NavigationItem[0];
-        else
-            return new NavigationItem[] { classDef };
+    public NavigationItem[] getItemsByName(String name, String pattern, Project project, boolean includeNonProjectItems) {
+        CommonProcessors.CollectProcessor<NavigationItem> processor = new CommonProcessors.CollectProcessor<>();
+        processElementsWithName(name, processor, FindSymbolParameters.wrap(pattern, project, includeNonProjectItems));
+        Collection<NavigationItem> results = processor.getResults();
+        return results.toArray(new NavigationItem[results.size()]);
     }
 }
@@ -47,12 +47,11 @@ public class LuaNameSuggestionProvider implements NameSuggestionProvider {
                 Set<String> classNames = new HashSet<>();
 
                 for (LuaType type : typeSet.getTypes()) {
-                    LuaType cur = type;
-                    while (cur != null) {
-                        String className = cur.getClassName();
-                        if (className != null && !cur.isAnonymous())
-                            classNames.add(className);
-                        cur = cur.getSuperClass(context);
+                    String className = type.getClassName();
+                    if (className != null && !type.isAnonymous())
+                        classNames.add(className);
+                    for (LuaType superType : type.getSuperClasses(context)) {
+                        classNames.add(superType.getClassName());
                     }
                 }
 
@@ -16,37 +16,55 @@
 
 package com.tang.intellij.lua.editor;
 
-import com.intellij.navigation.ChooseByNameContributor;
+import com.intellij.navigation.ChooseByNameContributorEx;
 import com.intellij.navigation.NavigationItem;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.NavigatablePsiElement;
-import com.intellij.util.containers.HashSet;
-import com.tang.intellij.lua.search.SearchContext;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.FindSymbolParameters;
+import com.intellij.util.indexing.IdFilter;
 import com.tang.intellij.lua.stubs.index.LuaShortNameIndex;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 
 /**
  * Goto Symbol
+ * 直接遍历索引的 key，不复制成集合和数组
  * Created by TangZX on 2016/12/12.
  */
-public class LuaSymbolNavigationContributor implements ChooseByNameContributor {
+public class LuaSymbolNavigationContributor implements ChooseByNameContributorEx {
+
+    @Override
+    public void processNames(@NotNull Processor<String> processor, @NotNull GlobalSearchScope scope, @Nullable IdFilter filter) {
+        StubIndex.getInstance().processAllKeys(LuaShortNameIndex.KEY, processor, scope, filter);
+    }
+
+    @Override
+    public void processElementsWithName(@NotNull String name, @NotNull Processor<NavigationItem> processor, @NotNull FindSymbolParameters parameters) {
+        StubIndex.getInstance().processElements(LuaShortNameIndex.KEY, name, parameters.getProject(),
+                parameters.getSearchScope(), parameters.getIdFilter(), NavigatablePsiElement.class, processor::process);
+    }
+
     @NotNull
     @Override
-    public String[] getNames(Project project, boolean b) {
-        HashSet<String> nameSet = new HashSet<>();
-        LuaShortNameIndex.getInstance().processAllKeys(project, s -> {
-            nameSet.add(s);
-            return true;
-        });
-        return nameSet.toArray(new String[nameSet.size()]);
+    public String[] getNames(Project project, boolean includeNonProjectItems) {
+        CommonProcessors.CollectProcessor<String> processor = new CommonProcessors.CollectProcessor<>();
+        processNames(processor, FindSymbolParameters.searchScopeFor(project, includeNonProjectItems), null);
+        return ArrayUtil.toStringArray(processor.getResults());
     }
 
     @NotNull
     @Override
-    public NavigationItem[] getItemsByName(String s, String s1, Project project, boolean b) {
-        Collection<NavigatablePsiElement> elements = LuaShortNameIndex.find(s, new SearchContext(project));
-        return elements.toArray(new NavigatablePsiElement[elements.size()]);
+    public NavigationItem[] getItemsByName(String name, String pattern, Project project, boolean includeNonProjectItems) {
+        CommonProcessors.CollectProcessor<NavigationItem> processor = new CommonProcessors.CollectProcessor<>();
+        processElementsWithName(name, processor, FindSymbolParameters.wrap(pattern, project, includeNonProjectItems));
+        Collection<NavigationItem> results = processor.getResults();
+        return results.toArray(new NavigationItem[results.size()]);
     }
 }
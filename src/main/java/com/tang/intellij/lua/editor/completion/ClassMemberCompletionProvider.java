@@ -23,11 +23,13 @@ import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.psi.PsiElement;
 import com.intellij.util.ProcessingContext;
 import com.tang.intellij.lua.lang.LuaIcons;
+import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaClassField;
 import com.tang.intellij.lua.psi.LuaClassMethodDef;
 import com.tang.intellij.lua.psi.LuaIndexExpr;
 import com.tang.intellij.lua.psi.LuaPsiImplUtil;
+import com.tang.intellij.lua.search.LuaClassMembers;
 import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
 
@@ -43,33 +45,28 @@ public class ClassMemberCompletionProvider extends CompletionProvider<Completion
 
         if (parent instanceof LuaIndexExpr) {
             LuaIndexExpr indexExpr = (LuaIndexExpr) parent;
-            LuaTypeSet prefixTypeSet = indexExpr.guessPrefixType(new SearchContext(indexExpr.getProject()));
+            SearchContext context = new SearchContext(indexExpr.getProject());
+            LuaTypeSet prefixTypeSet = indexExpr.guessPrefixType(context);
             if (prefixTypeSet != null) {
-                if (indexExpr.getColon() != null) {
-                    prefixTypeSet.getTypes().forEach(luaType -> {
-                        SearchContext context = new SearchContext(indexExpr.getProject());
-                        luaType.initAliasName(context);
-                        luaType.processMethods(context, (curType, def) -> {
-                            String className = curType.getDisplayName();
-                            addMethod(completionResultSet, curType == luaType, false, className, def);
-                        });
-                    });
-                } else {
-                    prefixTypeSet.getTypes().forEach(luaType -> {
-                        SearchContext context = new SearchContext(indexExpr.getProject());
-                        luaType.initAliasName(context);
-                        luaType.processMethods(context, (curType, def) -> {
-                            String className = curType.getDisplayName();
-                            addMethod(completionResultSet, curType == luaType, true, className, def);
-                        });
-                        luaType.processFields(context, (curType, field) -> {
-                            String className = curType.getDisplayName();
-                            addField(completionResultSet, curType == luaType, className, field);
-                        });
-                        luaType.processStaticMethods(context, (curType, def) -> {
-                            addStaticMethod(completionResultSet, curType == luaType, curType.getDisplayName(), def);
-                        });
-                    });
+                boolean isColon = indexExpr.getColon() != null;
+                for (LuaType luaType : prefixTypeSet.getTypes()) {
+                    LuaClassMembers members = luaType.getMembers(context);
+                    if (members == null)
+                        continue;
+                    for (LuaClassMembers.Member<LuaClassMethodDef> member : members.getMethods()) {
+                        LuaType curType = member.getOwnerType();
+                        addMethod(completionResultSet, curType.equals(luaType), !isColon, curType.getDisplayName(), member.getElement());
+                    }
+                    if (!isColon) {
+                        for (LuaClassMembers.Member<LuaClassField> member : members.getFields()) {
+                            LuaType curType = member.getOwnerType();
+                            addField(completionResultSet, curType.equals(luaType), curType.getDisplayName(), member.getElement());
+                        }
+                        for (LuaClassMembers.Member<LuaClassMethodDef> member : members.getStaticMethods()) {
+                            LuaType curType = member.getOwnerType();
+                            addStaticMethod(completionResultSet, curType.equals(luaType), curType.getDisplayName(), member.getElement());
+                        }
+                    }
                 }
             }
         }
@@ -95,7 +92,7 @@ public class ClassMemberCompletionProvider extends CompletionProvider<Completion
                     elementBuilder = elementBuilder.bold();
                 completionResultSet.addElement(elementBuilder);
             } else {
-                LuaPsiImplUtil.processOptional(def.getParams(), (signature, mask) -> {
+                LuaPsiImplUtil.processOptional(def, (signature, mask) -> {
                     LuaMethodLookupElement elementBuilder = new LuaMethodLookupElement(methodName, signature, bold, def);
                     elementBuilder.setHandler(new FuncInsertHandler(def).withMask(mask));
                     elementBuilder.setTailText("  [" + clazzName + "]");
@@ -108,7 +105,7 @@ public class ClassMemberCompletionProvider extends CompletionProvider<Completion
     private void addStaticMethod(@NotNull CompletionResultSet completionResultSet, boolean bold, String clazzName, LuaClassMethodDef def) {
         String methodName = def.getName();
         if (methodName != null && completionResultSet.getPrefixMatcher().prefixMatches(methodName)) {
-            LuaPsiImplUtil.processOptional(def.getParams(), (signature, mask) -> {
+            LuaPsiImplUtil.processOptional(def, (signature, mask) -> {
                 LuaMethodLookupElement elementBuilder = new LuaMethodLookupElement(methodName, signature, bold, def);
                 elementBuilder.setHandler(new FuncInsertHandler(def).withMask(mask));
                 elementBuilder.setItemTextUnderlined(true);
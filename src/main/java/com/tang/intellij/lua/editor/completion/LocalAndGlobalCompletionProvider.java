@@ -19,9 +19,13 @@ package com.tang.intellij.lua.editor.completion;
 import com.intellij.codeInsight.completion.CompletionParameters;
 import com.intellij.codeInsight.completion.CompletionProvider;
 import com.intellij.codeInsight.completion.CompletionResultSet;
+import com.intellij.codeInsight.completion.PrefixMatcher;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
 import com.intellij.util.ProcessingContext;
@@ -35,6 +39,9 @@ import com.tang.intellij.lua.stubs.index.LuaGlobalVarIndex;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * suggest local/global vars and functions
@@ -42,6 +49,9 @@ import javax.swing.*;
  */
 public class LocalAndGlobalCompletionProvider extends CompletionProvider<CompletionParameters> {
 
+    // 每一类全局符号最多的结果数
+    private static final int MAX_GLOBALS = 500;
+
     private static final int LOCAL_VAR = 1;
     private static final int LOCAL_FUN = 2;
     private static final int GLOBAL_VAR = 4;
@@ -92,7 +102,7 @@ public class LocalAndGlobalCompletionProvider extends CompletionProvider<Complet
         //local
         PsiElement cur = completionParameters.getPosition();
         if (has(LOCAL_VAR)) {
-            LuaPsiTreeUtil.walkUpLocalNameDef(cur, nameDef -> {
+            LuaSymbolTable.processLocalNameDefs(cur, nameDef -> {
                 String name = nameDef.getText();
                 if (completionResultSet.getPrefixMatcher().prefixMatches(name)) {
                     session.addWord(name);
@@ -107,11 +117,11 @@ public class LocalAndGlobalCompletionProvider extends CompletionProvider<Complet
             });
         }
         if (has(LOCAL_FUN)) {
-            LuaPsiTreeUtil.walkUpLocalFuncDef(cur, localFuncDef -> {
+            LuaSymbolTable.processLocalFuncDefs(cur, localFuncDef -> {
                 String name = localFuncDef.getName();
                 if (name != null && completionResultSet.getPrefixMatcher().prefixMatches(name)) {
                     session.addWord(name);
-                    LuaPsiImplUtil.processOptional(localFuncDef.getParams(), (signature, mask) -> {
+                    LuaPsiImplUtil.processOptional(localFuncDef, (signature, mask) -> {
                         LocalFunctionLookupElement elementBuilder = new LocalFunctionLookupElement(name, signature, localFuncDef);
                         elementBuilder.setHandler(new FuncInsertHandler(localFuncDef).withMask(mask));
                         completionResultSet.addElement(elementBuilder);
@@ -123,37 +133,23 @@ public class LocalAndGlobalCompletionProvider extends CompletionProvider<Complet
 
         //global functions
         Project project = cur.getProject();
+        SearchContext context = new SearchContext(project);
         if (has(GLOBAL_FUN)) {
-            SearchContext context = new SearchContext(project);
-            LuaGlobalFuncIndex.getInstance().processAllKeys(project, name -> {
-                if (completionResultSet.getPrefixMatcher().prefixMatches(name)) {
-                    LuaGlobalFuncDef globalFuncDef = LuaGlobalFuncIndex.find(name, context);
-                    if (globalFuncDef != null) {
-                        session.addWord(name);
-
-                        LuaPsiImplUtil.processOptional(globalFuncDef.getParams(), (signature, mask) -> {
-                            GlobalFunctionLookupElement elementBuilder = new GlobalFunctionLookupElement(name, signature, globalFuncDef);
-                            elementBuilder.setHandler(new GlobalFuncInsertHandler(name, project).withMask(mask));
-                            completionResultSet.addElement(elementBuilder);
-                        });
-                    }
-                }
-                return true;
+            processGlobals(LuaGlobalFuncIndex.KEY, LuaGlobalFuncDef.class, context, completionResultSet, (name, globalFuncDef) -> {
+                session.addWord(name);
+                LuaPsiImplUtil.processOptional(globalFuncDef, (signature, mask) -> {
+                    GlobalFunctionLookupElement elementBuilder = new GlobalFunctionLookupElement(name, signature, globalFuncDef);
+                    elementBuilder.setHandler(new GlobalFuncInsertHandler(name, project).withMask(mask));
+                    completionResultSet.addElement(elementBuilder);
+                });
             });
         }
         //global fields
         if (has(GLOBAL_VAR)) {
-            SearchContext context = new SearchContext(project);
-            LuaGlobalVarIndex.getInstance().processAllKeys(project, name -> {
-                if (completionResultSet.getPrefixMatcher().prefixMatches(name)) {
-                    LuaGlobalVar globalVar = LuaGlobalVarIndex.find(name, context);
-                    if (globalVar != null) {
-                        session.addWord(name);
-                        LuaTypeGuessableLookupElement elementBuilder = new LuaTypeGuessableLookupElement(name, globalVar, false, LuaIcons.GLOBAL_FIELD);
-                        completionResultSet.addElement(elementBuilder);
-                    }
-                }
-                return true;
+            processGlobals(LuaGlobalVarIndex.KEY, LuaGlobalVar.class, context, completionResultSet, (name, globalVar) -> {
+                session.addWord(name);
+                LuaTypeGuessableLookupElement elementBuilder = new LuaTypeGuessableLookupElement(name, globalVar, false, LuaIcons.GLOBAL_FIELD);
+                completionResultSet.addElement(elementBuilder);
             });
         }
         //key words
@@ -169,4 +165,36 @@ public class LocalAndGlobalCompletionProvider extends CompletionProvider<Complet
             completionResultSet.addElement(LookupElementBuilder.create(Constants.WORD_SELF));
         }
     }
+
+    /**
+     * 遍历一次索引的 key，匹配的 key 只取第一个定义
+     * 每一类最多 MAX_GLOBALS 个结果，超过时前缀变化后重新补全
+     */
+    private static <T extends PsiElement> void processGlobals(StubIndexKey<String, T> key,
+                                                              Class<T> clazz,
+                                                              SearchContext context,
+                                                              CompletionResultSet completionResultSet,
+                                                              BiConsumer<String, T> consumer) {
+        if (context.isDumb())
+            return;
+        PrefixMatcher matcher = completionResultSet.getPrefixMatcher();
+        List<String> names = new ArrayList<>();
+        StubIndex.getInstance().processAllKeys(key, name -> {
+            ProgressManager.checkCanceled();
+            if (matcher.prefixMatches(name))
+                names.add(name);
+            return names.size() < MAX_GLOBALS;
+        }, context.getScope(), null);
+        if (names.size() >= MAX_GLOBALS)
+            completionResultSet.restartCompletionOnAnyPrefixChange();
+
+        Project project = context.getProject();
+        for (String name : names) {
+            ProgressManager.checkCanceled();
+            StubIndex.getInstance().processElements(key, name, project, context.getScope(), clazz, element -> {
+                consumer.accept(name, element);
+                return false;
+            });
+        }
+    }
 }
\ No newline at end of file
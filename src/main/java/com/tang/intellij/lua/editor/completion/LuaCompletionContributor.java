@@ -22,11 +22,13 @@ import com.intellij.patterns.PsiElementPattern;
 import com.intellij.psi.PsiComment;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import com.intellij.util.containers.HashSet;
 import com.tang.intellij.lua.lang.LuaIcons;
 import com.tang.intellij.lua.psi.*;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.intellij.patterns.PlatformPatterns.psiElement;
 
 /**
@@ -95,24 +97,12 @@ public class LuaCompletionContributor extends CompletionContributor {
         CompletionSession session = CompletionSession.get(parameters);
         assert session != null;
 
-        HashSet<String> wordsInFileSet = new HashSet<>();
+        List<String> wordsInFileSet = new ArrayList<>();
         PsiFile file = session.getParameters().getOriginalFile();
-        file.acceptChildren(new LuaVisitor() {
-            @Override
-            public void visitPsiElement(@NotNull LuaPsiElement o) {
-                o.acceptChildren(this);
-            }
-
-            @Override
-            public void visitElement(PsiElement element) {
-                if (element.getNode().getElementType() == LuaTypes.ID && element.getTextLength() > 2) {
-                    String text = element.getText();
-                    if (session.getResultSet().getPrefixMatcher().prefixMatches(text) && session.addWord(text))
-                        wordsInFileSet.add(text);
-                }
-                super.visitElement(element);
-            }
-        });
+        for (String word : LuaFileWords.getWords(file)) {
+            if (session.getResultSet().getPrefixMatcher().prefixMatches(word) && session.addWord(word))
+                wordsInFileSet.add(word);
+        }
 
         for (String s : wordsInFileSet) {
             session.getResultSet().addElement(PrioritizedLookupElement.withPriority(LookupElementBuilder
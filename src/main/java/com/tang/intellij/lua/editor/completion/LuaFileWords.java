@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.editor.completion;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import com.tang.intellij.lua.lexer.LuaLexerAdapter;
+import com.tang.intellij.lua.psi.LuaTypes;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 文件中出现的标识符（长度大于 2），直接从 lexer 得到，不遍历 PSI
+ * 按 document 的修改时间缓存，多次补全之间共用
+ */
+class LuaFileWords {
+
+    private static final Key<LuaFileWords> KEY = Key.create("lua.file.words");
+
+    private final long stamp;
+    private final Set<String> words;
+
+    private LuaFileWords(long stamp, Set<String> words) {
+        this.stamp = stamp;
+        this.words = words;
+    }
+
+    @NotNull
+    static Set<String> getWords(@NotNull PsiFile file) {
+        Document document = file.getViewProvider().getDocument();
+        if (document == null)
+            return Collections.emptySet();
+        long stamp = document.getModificationStamp();
+        LuaFileWords fileWords = document.getUserData(KEY);
+        if (fileWords == null || fileWords.stamp != stamp) {
+            fileWords = new LuaFileWords(stamp, collect(document.getImmutableCharSequence()));
+            document.putUserData(KEY, fileWords);
+        }
+        return fileWords.words;
+    }
+
+    @NotNull
+    private static Set<String> collect(@NotNull CharSequence text) {
+        Set<String> words = new HashSet<>();
+        Lexer lexer = new LuaLexerAdapter();
+        lexer.start(text);
+        IElementType type;
+        while ((type = lexer.getTokenType()) != null) {
+            if (type == LuaTypes.ID && lexer.getTokenEnd() - lexer.getTokenStart() > 2)
+                words.add(text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString());
+            lexer.advance();
+        }
+        return Collections.unmodifiableSet(words);
+    }
+}
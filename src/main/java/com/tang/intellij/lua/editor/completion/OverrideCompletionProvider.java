@@ -51,8 +51,9 @@ public class OverrideCompletionProvider extends CompletionProvider<CompletionPar
             SearchContext context = new SearchContext(methodDef.getProject());
             LuaType classType = methodDef.getClassType(context);
             if (classType != null) {
-                LuaType sup = classType.getSuperClass(context);
-                addOverrideMethod(completionParameters, completionResultSet, sup);
+                for (LuaType sup : classType.getSuperClasses(context)) {
+                    addOverrideMethod(completionParameters, completionResultSet, sup);
+                }
             }
         }
     }
@@ -60,7 +61,6 @@ public class OverrideCompletionProvider extends CompletionProvider<CompletionPar
     private void addOverrideMethod(@NotNull CompletionParameters completionParameters, @NotNull CompletionResultSet completionResultSet, LuaType sup) {
         if (sup != null) {
             Project project = completionParameters.getOriginalFile().getProject();
-            SearchContext context = new SearchContext(project);
             String clazzName = sup.getClassName();
             Collection<LuaClassMethodDef> list = LuaClassMethodIndex.getInstance().get(clazzName, project, new ProjectAndLibrariesScope(project));
             for (LuaClassMethodDef def : list) {
@@ -74,9 +74,6 @@ public class OverrideCompletionProvider extends CompletionProvider<CompletionPar
                     completionResultSet.addElement(elementBuilder);
                 }
             }
-
-            sup = sup.getSuperClass(context);
-            addOverrideMethod(completionParameters, completionResultSet, sup);
         }
     }
 
@@ -19,19 +19,14 @@ package com.tang.intellij.lua.editor.completion;
 import com.intellij.codeInsight.completion.*;
 import com.intellij.codeInsight.lookup.LookupElement;
 import com.intellij.codeInsight.lookup.LookupElementBuilder;
-import com.intellij.openapi.module.Module;
-import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ModuleRootManager;
-import com.intellij.openapi.roots.impl.ProjectFileIndexFacade;
-import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.ProcessingContext;
-import com.tang.intellij.lua.lang.LuaFileType;
 import com.tang.intellij.lua.lang.LuaIcons;
 import com.tang.intellij.lua.lang.type.LuaString;
+import com.tang.intellij.lua.stubs.index.LuaModuleNameIndex;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -57,35 +52,22 @@ public class RequirePathCompletionProvider extends CompletionProvider<Completion
         completionResultSet.stopHere();
     }
 
+    /**
+     * 模块名来自 LuaModuleNameIndex，只为匹配前缀的模块创建 LookupElement
+     */
     void addAllFiles(@NotNull CompletionParameters completionParameters, @NotNull CompletionResultSet completionResultSet) {
         Project project = completionParameters.getOriginalFile().getProject();
-        Module[] modules = ModuleManager.getInstance(project).getModules();
-        for (Module module : modules) {
-            VirtualFile[] sourceRoots = ModuleRootManager.getInstance(module).getSourceRoots();
-            for (VirtualFile sourceRoot : sourceRoots) {
-                addAllFiles(project, completionResultSet, null, sourceRoot.getChildren());
-            }
-        }
-    }
-
-    void addAllFiles(Project project, @NotNull CompletionResultSet completionResultSet, String pck, VirtualFile[] children) {
-        for (VirtualFile child : children) {
-            if (!ProjectFileIndexFacade.getInstance(project).isInSource(child))
+        PrefixMatcher matcher = completionResultSet.getPrefixMatcher();
+        for (String moduleName : LuaModuleNameIndex.getAllModuleNames(project)) {
+            ProgressManager.checkCanceled();
+            //第一层的文件不要
+            if (moduleName.indexOf(PATH_SPLITTER) < 0 || !matcher.prefixMatches(moduleName))
                 continue;
-
-            String fileName = FileUtil.getNameWithoutExtension(child.getName());
-            String newPath = pck == null ? fileName : pck + "." + fileName;
-
-            if (child.isDirectory()) {
-                //noinspection UnsafeVfsRecursion
-                addAllFiles(project, completionResultSet, newPath, child.getChildren());
-            } else if (pck != null && child.getFileType() == LuaFileType.INSTANCE) { //第一层的文件不要
-                LookupElement lookupElement = LookupElementBuilder
-                        .create(newPath)
-                        .withIcon(LuaIcons.FILE)
-                        .withInsertHandler(new FullPackageInsertHandler());
-                completionResultSet.addElement(PrioritizedLookupElement.withPriority(lookupElement, 1));
-            }
+            LookupElement lookupElement = LookupElementBuilder
+                    .create(moduleName)
+                    .withIcon(LuaIcons.FILE)
+                    .withInsertHandler(new FullPackageInsertHandler());
+            completionResultSet.addElement(PrioritizedLookupElement.withPriority(lookupElement, 1));
         }
     }
 
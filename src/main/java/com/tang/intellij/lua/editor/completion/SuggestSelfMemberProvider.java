@@ -55,7 +55,7 @@ public class SuggestSelfMemberProvider extends CompletionProvider<CompletionPara
                 type.processMethods(searchContext, (curType, def) -> {
                     String methodName = def.getName();
                     if (methodName != null) {
-                        LuaPsiImplUtil.processOptional(def.getParams(), (signature, mask) -> {
+                        LuaPsiImplUtil.processOptional(def, (signature, mask) -> {
                             LuaMethodLookupElement elementBuilder = new LuaMethodLookupElement("self:" + methodName, signature, curType == type, def);
                             elementBuilder.setHandler(new FuncInsertHandler(def).withMask(mask));
                             elementBuilder.setTailText("  [" + curType.getDisplayName() + "]");
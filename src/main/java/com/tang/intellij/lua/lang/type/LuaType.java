@@ -16,56 +16,82 @@
 
 package com.tang.intellij.lua.lang.type;
 
-import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.search.ProjectAndLibrariesScope;
 import com.intellij.psi.stubs.StubInputStream;
 import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.io.StringRef;
-import com.tang.intellij.lua.comment.psi.LuaDocClassDef;
 import com.tang.intellij.lua.psi.LuaClassField;
 import com.tang.intellij.lua.psi.LuaClassMethodDef;
 import com.tang.intellij.lua.psi.LuaNameExpr;
 import com.tang.intellij.lua.psi.LuaPsiResolveUtil;
+import com.tang.intellij.lua.search.LuaClassHierarchy;
+import com.tang.intellij.lua.search.LuaClassMembers;
 import com.tang.intellij.lua.search.SearchContext;
-import com.tang.intellij.lua.stubs.index.LuaClassFieldIndex;
-import com.tang.intellij.lua.stubs.index.LuaClassIndex;
-import com.tang.intellij.lua.stubs.index.LuaClassMethodIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
- * 类型说明
+ * 类型说明，创建后不再修改
+ * 只有名字的类型（没有父类、别名）按名字共享同一个对象
  * Created by TangZX on 2016/12/4.
  */
 public class LuaType implements Comparable<LuaType> {
 
+    private static final Map<String, LuaType> interned = ContainerUtil.createConcurrentWeakValueMap();
+    private static final Map<String, LuaType> internedUnreliable = ContainerUtil.createConcurrentWeakValueMap();
+
     /**
      * builtin lua type
      */
-    public static LuaType NUMBER = create("number", null);
-    public static LuaType STRING = create("string", null);
-    public static LuaType BOOLEAN = create("boolean", null);
+    public static final LuaType NUMBER = create("number", null);
+    public static final LuaType STRING = create("string", null);
+    public static final LuaType BOOLEAN = create("boolean", null);
 
     public static LuaType create(@NotNull String typeName, @Nullable String superTypeName) {
+        return create(typeName, superTypeName, null);
+    }
+
+    public static LuaType create(@NotNull String typeName, @Nullable String superTypeName, @Nullable String aliasName) {
+        if (superTypeName == null && aliasName == null)
+            return interned.computeIfAbsent(typeName, name -> newType(name, null, null));
+        return newType(typeName, superTypeName, aliasName);
+    }
+
+    /**
+     * 模糊匹配得到的类型
+     */
+    public static LuaType createUnreliable(@NotNull String typeName) {
+        return internedUnreliable.computeIfAbsent(typeName, name -> {
+            LuaType type = newType(name, null, null);
+            type.isUnreliable = true;
+            return type;
+        });
+    }
+
+    private static LuaType newType(String typeName, String superTypeName, String aliasName) {
         LuaType type = new LuaType();
         type.clazzName = typeName;
         type.superClassName = superTypeName;
+        type.aliasName = aliasName;
         return type;
     }
 
     public static LuaType createAnonymousType(PsiElement element) {
-        LuaType type = create(LuaPsiResolveUtil.getAnonymousType(element), null);
+        LuaType type = newType(LuaPsiResolveUtil.getAnonymousType(element), null, null);
         type.isAnonymous = true;
         return type;
     }
 
     public static LuaType createGlobalType(LuaNameExpr ref) {
-        return create(ref.getText(), null);
+        // getName 可以从 stub 取得，不需要加载 AST
+        return create(ref.getName(), null);
     }
 
     protected LuaType() {
@@ -78,31 +104,49 @@ public class LuaType implements Comparable<LuaType> {
     private String aliasName;
     private String superClassName;
 
-    public void initAliasName(SearchContext context) {
+    private volatile LuaTypeSet typeSet;
+
+    /**
+     * 别名，自己没有时到类定义上找，不会修改这个类型
+     * @param context SearchContext
+     * @return alias name
+     */
+    @Nullable
+    public String getAliasName(SearchContext context) {
         if (aliasName == null) {
-            LuaDocClassDef classDef = LuaClassIndex.find(clazzName, context);
-            if (classDef != null) {
-                LuaType classType = classDef.getClassType();
-                setAliasName(classType.getAliasName());
-            }
+            LuaClassHierarchy.ClassNode node = LuaClassHierarchy.getInstance(context.getProject()).findClass(clazzName, context);
+            if (node != null)
+                return node.getAliasName();
         }
+        return aliasName;
     }
 
     public LuaType getSuperClass(SearchContext context) {
         if (superClassName != null) {
-            LuaDocClassDef superClassDef = LuaClassIndex.find(superClassName, context);
-            if (superClassDef != null)
-                return superClassDef.getClassType();
+            LuaClassHierarchy.ClassNode node = LuaClassHierarchy.getInstance(context.getProject()).findClass(superClassName, context);
+            if (node != null)
+                return node.getType();
         }
         return null;
     }
 
-    public String getSuperClassName() {
-        return superClassName;
+    /**
+     * 所有父类，由近到远，循环继承安全
+     * @param context SearchContext
+     * @return list
+     */
+    @NotNull
+    public List<LuaType> getSuperClasses(SearchContext context) {
+        List<LuaClassHierarchy.ClassNode> chain = LuaClassHierarchy.getInstance(context.getProject()).getSuperChain(clazzName, context);
+        List<LuaType> list = new ArrayList<>(chain.size());
+        for (LuaClassHierarchy.ClassNode node : chain) {
+            list.add(node.getType());
+        }
+        return list;
     }
 
-    public void setAliasName(String aliasName) {
-        this.aliasName = aliasName;
+    public String getSuperClassName() {
+        return superClassName;
     }
 
     public String getAliasName() {
@@ -117,18 +161,48 @@ public class LuaType implements Comparable<LuaType> {
         return isAnonymous() ? "Anonymous" : getClassName();
     }
 
+    // 序列化时的标记位，没有的名字不写
+    private static final int FLAG_ANONYMOUS = 1;
+    private static final int FLAG_ALIAS = 2;
+    private static final int FLAG_SUPER = 4;
+
     void serialize(@NotNull StubOutputStream stubOutputStream) throws IOException {
-        stubOutputStream.writeBoolean(isAnonymous);
+        int flags = 0;
+        if (isAnonymous) flags |= FLAG_ANONYMOUS;
+        if (aliasName != null) flags |= FLAG_ALIAS;
+        if (superClassName != null) flags |= FLAG_SUPER;
+        stubOutputStream.writeByte(flags);
         stubOutputStream.writeName(clazzName);
-        stubOutputStream.writeName(aliasName);
-        stubOutputStream.writeName(superClassName);
+        if (aliasName != null)
+            stubOutputStream.writeName(aliasName);
+        if (superClassName != null)
+            stubOutputStream.writeName(superClassName);
     }
 
-    void deserialize(@NotNull StubInputStream stubInputStream) throws IOException {
-        isAnonymous = stubInputStream.readBoolean();
-        clazzName = StringRef.toString(stubInputStream.readName());
-        aliasName = StringRef.toString(stubInputStream.readName());
-        superClassName = StringRef.toString(stubInputStream.readName());
+    static LuaType deserialize(@NotNull StubInputStream stubInputStream) throws IOException {
+        int flags = stubInputStream.readUnsignedByte();
+        boolean isAnonymous = (flags & FLAG_ANONYMOUS) != 0;
+        String clazzName = StringRef.toString(stubInputStream.readName());
+        String aliasName = (flags & FLAG_ALIAS) != 0 ? StringRef.toString(stubInputStream.readName()) : null;
+        String superClassName = (flags & FLAG_SUPER) != 0 ? StringRef.toString(stubInputStream.readName()) : null;
+        if (!isAnonymous)
+            return create(clazzName, superClassName, aliasName);
+        LuaType type = newType(clazzName, superClassName, aliasName);
+        type.isAnonymous = true;
+        return type;
+    }
+
+    /**
+     * 只包含这个类型的集合，共享同一个对象
+     */
+    @NotNull
+    public LuaTypeSet getTypeSet() {
+        LuaTypeSet set = typeSet;
+        if (set == null) {
+            set = new LuaTypeSet(this);
+            typeSet = set;
+        }
+        return set;
     }
 
     @Override
@@ -140,110 +214,71 @@ public class LuaType implements Comparable<LuaType> {
         void process(LuaType type, T t);
     }
 
+    /**
+     * 展开后的成员表
+     * @param context SearchContext
+     * @return LuaClassMembers, dumb 模式下为 null
+     */
+    @Nullable
+    public LuaClassMembers getMembers(@NotNull SearchContext context) {
+        return LuaClassHierarchy.getInstance(context.getProject()).getMembers(this, context);
+    }
+
     public void processFields(@NotNull SearchContext context,
                               Processor<LuaClassField> processor) {
-        String clazzName = getClassName();
-        if (clazzName == null)
-            return;
-        Project project = context.getProject();
-        assert project != null;
-
-        LuaClassFieldIndex fieldIndex = LuaClassFieldIndex.getInstance();
-        Collection<LuaClassField> list = fieldIndex.get(clazzName, project, new ProjectAndLibrariesScope(project));
-        if (aliasName != null) {
-            Collection<LuaClassField> classFields = fieldIndex.get(aliasName, project, new ProjectAndLibrariesScope(project));
-            list.addAll(classFields);
-        }
-
-        for (LuaClassField field : list) {
-            processor.process(this, field);
+        LuaClassMembers members = getMembers(context);
+        if (members != null) {
+            for (LuaClassMembers.Member<LuaClassField> member : members.getFields()) {
+                processor.process(member.getOwnerType(), member.getElement());
+            }
         }
-
-        // super
-        LuaType superType = getSuperClass(context);
-        if (superType != null)
-            superType.processFields(context, processor);
     }
 
     public void processMethods(@NotNull SearchContext context,
                                Processor<LuaClassMethodDef> processor) {
-        String clazzName = getClassName();
-        if (clazzName == null)
-            return;
-        Project project = context.getProject();
-        assert project != null;
-
-        LuaClassMethodIndex methodIndex = LuaClassMethodIndex.getInstance();
-        Collection<LuaClassMethodDef> list = methodIndex.get(clazzName, project, new ProjectAndLibrariesScope(project));
-        if (aliasName != null) {
-            list.addAll(methodIndex.get(aliasName, project, new ProjectAndLibrariesScope(project)));
-        }
-        for (LuaClassMethodDef def : list) {
-            String methodName = def.getName();
-            if (methodName != null) {
-                processor.process(this, def);
+        LuaClassMembers members = getMembers(context);
+        if (members != null) {
+            for (LuaClassMembers.Member<LuaClassMethodDef> member : members.getMethods()) {
+                processor.process(member.getOwnerType(), member.getElement());
             }
         }
-
-        LuaType superType = getSuperClass(context);
-        if (superType != null)
-            superType.processMethods(context, processor);
     }
 
     public void processStaticMethods(@NotNull SearchContext context,
                                      Processor<LuaClassMethodDef> processor) {
-        String clazzName = getClassName();
-        if (clazzName == null)
-            return;
-        Collection<LuaClassMethodDef> list = LuaClassMethodIndex.findStaticMethods(clazzName, context);
-        if (aliasName != null) {
-            list.addAll(LuaClassMethodIndex.findStaticMethods(aliasName, context));
-        }
-        for (LuaClassMethodDef def : list) {
-            String methodName = def.getName();
-            if (methodName != null) {
-                processor.process(this, def);
+        LuaClassMembers members = getMembers(context);
+        if (members != null) {
+            for (LuaClassMembers.Member<LuaClassMethodDef> member : members.getStaticMethods()) {
+                processor.process(member.getOwnerType(), member.getElement());
             }
         }
-
-        LuaType superType = getSuperClass(context);
-        if (superType != null)
-            superType.processStaticMethods(context, processor);
     }
 
     public LuaClassField findField(String fieldName, SearchContext context) {
-        LuaClassField def = LuaClassFieldIndex.find(this, fieldName, context);
-        if (def == null) {
-            LuaType superType = getSuperClass(context);
-            if (superType != null)
-                def = superType.findField(fieldName, context);
+        LuaClassMembers members = getMembers(context);
+        if (members != null) {
+            LuaClassMembers.Member<LuaClassField> member = members.findField(fieldName);
+            if (member != null)
+                return member.getElement();
         }
-        return def;
+        return null;
     }
 
     @Nullable
     public LuaClassMethodDef findMethod(String methodName, SearchContext context) {
-        String className = getClassName();
-        LuaClassMethodDef def = LuaClassMethodIndex.findMethodWithName(className, methodName, context);
-        if (def == null) { // static
-            def = LuaClassMethodIndex.findStaticMethod(className, methodName, context);
-        }
-        if (def == null) { // super
-            LuaType superType = getSuperClass(context);
-            if (superType != null)
-                def = superType.findMethod(methodName, context);
+        LuaClassMembers members = getMembers(context);
+        if (members != null) {
+            LuaClassMembers.Member<LuaClassMethodDef> member = members.findAnyMethod(methodName);
+            if (member != null)
+                return member.getElement();
         }
-        return def;
+        return null;
     }
 
     public boolean isUnreliable() {
         return isUnreliable;
     }
 
-    public void setUnreliable(boolean unreliable) {
-        isUnreliable = unreliable;
-    }
-
     public boolean isAnonymous() {
         return isAnonymous;
     }
@@ -269,6 +304,11 @@ public class LuaType implements Comparable<LuaType> {
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getClassName());
+    }
+
     @Override
     public String toString() {
         return getClassName();
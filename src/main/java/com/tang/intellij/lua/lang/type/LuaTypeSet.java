@@ -23,37 +23,52 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
 
 /**
- * 类型集合
+ * 类型集合，不可变
+ * 单个类型的集合由 LuaType 自己持有，空集合是单例，union 在一方包含另一方时不分配新对象
  * Created by TangZX on 2016/12/4.
  */
 public class LuaTypeSet {
 
+    public static final LuaTypeSet EMPTY = new LuaTypeSet(Collections.emptyList());
+
     public static LuaTypeSet create() {
-        return new LuaTypeSet();
+        return EMPTY;
     }
 
     public static LuaTypeSet create(LuaDocClassDef ... classDefs) {
-        LuaTypeSet set = new LuaTypeSet();
+        LuaTypeSet set = EMPTY;
         for (LuaDocClassDef def : classDefs) {
-            set.types.add(def.getClassType());
+            set = set.union(def.getClassType());
         }
         return set;
     }
 
+    public static LuaTypeSet create(@NotNull LuaType type) {
+        return type.getTypeSet();
+    }
+
     public static LuaTypeSet create(LuaType ... types) {
-        LuaTypeSet set = new LuaTypeSet();
-        Collections.addAll(set.types, types);
+        LuaTypeSet set = EMPTY;
+        for (LuaType type : types) {
+            set = set.union(type);
+        }
         return set;
     }
 
-    private List<LuaType> types = new ArrayList<>();
+    private final List<LuaType> types;
 
+    LuaTypeSet(@NotNull LuaType type) {
+        types = Collections.singletonList(type);
+    }
+
+    private LuaTypeSet(List<LuaType> types) {
+        this.types = types;
+    }
+
+    @NotNull
     public List<LuaType> getTypes() {
         return types;
     }
@@ -70,40 +85,67 @@ public class LuaTypeSet {
     }
 
     public LuaTypeSet union(LuaTypeSet other) {
-        if (other == null)
+        if (other == null || other == this || other.isEmpty() || containsAll(other))
             return this;
-        LuaTypeSet newSet = new LuaTypeSet();
-        newSet.types.addAll(this.types);
+        if (other.startsWith(this))
+            return other;
+        LuaType[] array = types.toArray(new LuaType[types.size() + other.types.size()]);
+        int size = types.size();
         for (LuaType type : other.types) {
-            if (!newSet.hasType(type)) {
-                newSet.addType(type);
-            }
+            if (!hasType(type))
+                array[size++] = type;
         }
-        return newSet;
+        return new LuaTypeSet(Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(array, size))));
+    }
+
+    public LuaTypeSet union(@NotNull LuaType type) {
+        return union(type.getTypeSet());
     }
 
     public boolean isEmpty() {
         return types.isEmpty();
     }
 
-    public void addType(LuaType type) {
-        if (!hasType(type))
-            types.add(type);
+    private boolean containsAll(LuaTypeSet other) {
+        if (other.types.size() > types.size())
+            return false;
+        for (LuaType type : other.types) {
+            if (!hasType(type))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 保持 union 的结果顺序：other 以 this 开头时结果就是 other
+     */
+    private boolean startsWith(LuaTypeSet other) {
+        if (other.types.size() > types.size())
+            return false;
+        for (int i = 0; i < other.types.size(); i++) {
+            if (!other.types.get(i).equals(types.get(i)))
+                return false;
+        }
+        return true;
     }
 
     private boolean hasType(LuaType type) {
         for (LuaType luaType : types) {
-            if (type.equals(luaType))
+            // 同名的类型多数是同一个对象
+            if (luaType == type || type.equals(luaType))
                 return true;
         }
         return false;
     }
 
+    /**
+     * 格式：var-int (null 为 0，否则为类型个数 + 1)，然后是每个类型
+     */
     public static void serialize(@Nullable LuaTypeSet set, @NotNull StubOutputStream stubOutputStream) throws IOException {
-        boolean notNull = set != null;
-        stubOutputStream.writeBoolean(notNull);
-        if (notNull) {
-            stubOutputStream.writeInt(set.types.size());
+        if (set == null) {
+            stubOutputStream.writeVarInt(0);
+        } else {
+            stubOutputStream.writeVarInt(set.types.size() + 1);
             for (int i = 0; i < set.types.size(); i++) {
                 LuaType type = set.types.get(i);
                 type.serialize(stubOutputStream);
@@ -113,23 +155,19 @@ public class LuaTypeSet {
 
     @Nullable
     public static LuaTypeSet deserialize(@NotNull StubInputStream stubInputStream) throws IOException {
-        boolean notNull = stubInputStream.readBoolean();
-        if (notNull) {
-            LuaTypeSet set = LuaTypeSet.create();
-            int num = stubInputStream.readInt();
-            for (int i = 0; i < num; i++) {
-                LuaType type = new LuaType();
-                type.deserialize(stubInputStream);
-                set.addType(type);
-            }
-            return set;
+        int num = stubInputStream.readVarInt() - 1;
+        if (num < 0)
+            return null;
+        LuaTypeSet set = EMPTY;
+        for (int i = 0; i < num; i++) {
+            set = set.union(LuaType.deserialize(stubInputStream));
         }
-        return null;
+        return set;
     }
 
     @Override
     public String toString() {
-        HashSet<String> set = new HashSet<>();
+        Set<String> set = new HashSet<>();
         for (LuaType type : types) {
             if (!type.isAnonymous()) {
                 set.add(type.getDisplayName());
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.project;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.*;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.messages.MessageBusConnection;
+import com.tang.intellij.lua.psi.LuaAssignStat;
+import com.tang.intellij.lua.psi.LuaFile;
+import com.tang.intellij.lua.psi.LuaGlobalFuncDef;
+import com.tang.intellij.lua.psi.LuaVarList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 全局名字定义在哪里：标准库 SDK、其它库、项目
+ * 高亮 print, table, string 这类名字时不用每次都 resolve 再查文件索引
+ * 根目录变化或者可能增删全局定义（赋值语句左边、全局函数名）的修改时失效
+ */
+public class LuaGlobalOrigins {
+
+    public enum Origin {
+        STD,
+        LIBRARY,
+        PROJECT;
+
+        public boolean isLibrary() {
+            return this != PROJECT;
+        }
+    }
+
+    public static LuaGlobalOrigins getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, LuaGlobalOrigins.class);
+    }
+
+    /**
+     * 一个修改计数下的记录，计数变化时整体替换
+     */
+    private static class Origins {
+        private final long stamp;
+        private final Map<String, Origin> map = new ConcurrentHashMap<>();
+
+        Origins(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    private final Project project;
+    private final SimpleModificationTracker modificationTracker = new SimpleModificationTracker();
+    private volatile Origins origins = new Origins(-1);
+
+    public LuaGlobalOrigins(Project project) {
+        this.project = project;
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new GlobalDefChangeListener(), project);
+        MessageBusConnection connection = project.getMessageBus().connect(project);
+        connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+            @Override
+            public void rootsChanged(ModuleRootEvent event) {
+                modificationTracker.incModificationCount();
+            }
+        });
+        connection.subscribe(DumbService.DUMB_MODE, new DumbService.DumbModeListener() {
+            @Override
+            public void enteredDumbMode() {
+
+            }
+
+            @Override
+            public void exitDumbMode() {
+                modificationTracker.incModificationCount();
+            }
+        });
+    }
+
+    /**
+     * @param name 全局名字
+     * @param resolver 没有记录时用来 resolve 这个名字
+     * @return 来源，resolve 不到时为 null
+     */
+    @Nullable
+    public Origin getOrigin(@NotNull String name, @NotNull Supplier<PsiElement> resolver) {
+        Origins current = getOrigins();
+        Origin origin = current.map.get(name);
+        if (origin == null) {
+            PsiElement resolved = resolver.get();
+            if (resolved == null)
+                return null;
+            origin = computeOrigin(resolved);
+            // 计算期间如果发生了变化，写入的是已经被替换掉的记录，不会影响新的结果
+            current.map.put(name, origin);
+        }
+        return origin;
+    }
+
+    @NotNull
+    private Origins getOrigins() {
+        long stamp = modificationTracker.getModificationCount();
+        Origins current = origins;
+        if (current.stamp != stamp) {
+            current = new Origins(stamp);
+            origins = current;
+        }
+        return current;
+    }
+
+    @NotNull
+    private Origin computeOrigin(@NotNull PsiElement resolved) {
+        PsiFile file = resolved.getContainingFile();
+        VirtualFile virtualFile = file == null ? null : file.getVirtualFile();
+        if (virtualFile == null || !FileIndexFacade.getInstance(project).isInLibraryClasses(virtualFile))
+            return Origin.PROJECT;
+        for (OrderEntry entry : ProjectFileIndex.SERVICE.getInstance(project).getOrderEntriesForFile(virtualFile)) {
+            if (entry instanceof JdkOrderEntry) {
+                JdkOrderEntry jdkEntry = (JdkOrderEntry) entry;
+                if (jdkEntry.getJdk() != null && jdkEntry.getJdk().getSdkType() instanceof LuaSdkType)
+                    return Origin.STD;
+            }
+        }
+        return Origin.LIBRARY;
+    }
+
+    /**
+     * 只关心可能增删全局定义的变化：赋值语句左边、全局函数名、整个语句的增删以及文件级的变化
+     */
+    private class GlobalDefChangeListener extends PsiTreeChangeAdapter {
+        @Override
+        public void childAdded(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), event.getOldChild());
+            onChange(event.getParent(), event.getNewChild());
+        }
+
+        @Override
+        public void childMoved(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getOldParent(), event.getChild());
+        }
+
+        @Override
+        public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), null);
+        }
+
+        @Override
+        public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+            modificationTracker.incModificationCount();
+        }
+
+        private void onChange(@Nullable PsiElement parent, @Nullable PsiElement child) {
+            if (parent == null || parent instanceof PsiDirectory || child instanceof PsiFile) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            PsiFile file = parent.getContainingFile();
+            if (!(file instanceof LuaFile))
+                return;
+            if (parent instanceof PsiFile && child == null) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            if (PsiTreeUtil.getParentOfType(parent, LuaVarList.class, false) != null) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            LuaGlobalFuncDef funcDef = PsiTreeUtil.getParentOfType(parent, LuaGlobalFuncDef.class, false);
+            if (funcDef != null && !PsiTreeUtil.isAncestor(funcDef.getFuncBody(), parent, false)) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            if (child instanceof LuaAssignStat || child instanceof LuaGlobalFuncDef
+                    || (child != null && PsiTreeUtil.findChildOfAnyType(child, LuaAssignStat.class, LuaGlobalFuncDef.class) != null)) {
+                modificationTracker.incModificationCount();
+            }
+        }
+    }
+}
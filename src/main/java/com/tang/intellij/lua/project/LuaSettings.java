@@ -37,6 +37,32 @@ public class LuaSettings implements PersistentStateComponent<LuaSettings> {
         return ServiceManager.getService(LuaSettings.class);
     }
 
+    /**
+     * 类似 package.path 的 require 路径模板，? 替换为 a/b/c
+     */
+    private String[] requirePathTemplates = { "?.lua", "?/init.lua", "?.txt" };
+
+    public String[] getRequirePathTemplates() {
+        return requirePathTemplates;
+    }
+
+    public void setRequirePathTemplates(String[] requirePathTemplates) {
+        this.requirePathTemplates = requirePathTemplates;
+    }
+
+    /**
+     * 补全时一个函数最多列出的省略可选参数的签名个数
+     */
+    private int maxOptionalSignatures = 8;
+
+    public int getMaxOptionalSignatures() {
+        return maxOptionalSignatures;
+    }
+
+    public void setMaxOptionalSignatures(int maxOptionalSignatures) {
+        this.maxOptionalSignatures = maxOptionalSignatures;
+    }
+
     @Nullable
     @Override
     public LuaSettings getState() {
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.project;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 项目所有模块的源码根目录，按模块顺序
+ * 文件 -> 根目录、相对路径通过 LuaSourceRootTrie 查找，根目录变化时重建
+ */
+public class LuaSourceRootManager {
+
+    public static LuaSourceRootManager getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, LuaSourceRootManager.class);
+    }
+
+    private static class Roots {
+        private final VirtualFile[] roots;
+        private final LuaSourceRootTrie<VirtualFile> trie = new LuaSourceRootTrie<>();
+
+        Roots(VirtualFile[] roots) {
+            this.roots = roots;
+            for (VirtualFile root : roots) {
+                trie.add(root.getPath(), root);
+            }
+        }
+    }
+
+    private final Project project;
+    private final CachedValue<Roots> roots;
+
+    public LuaSourceRootManager(Project project) {
+        this.project = project;
+        // 根目录变化时 ProjectRootManager 的修改计数会增加，不会把旧的结果写回来
+        roots = CachedValuesManager.getManager(project).createCachedValue(
+                () -> CachedValueProvider.Result.create(buildRoots(), ProjectRootManager.getInstance(project)), false);
+    }
+
+    @NotNull
+    private Roots buildRoots() {
+        List<VirtualFile> list = new ArrayList<>();
+        for (Module module : ModuleManager.getInstance(project).getModules()) {
+            for (VirtualFile sourceRoot : ModuleRootManager.getInstance(module).getSourceRoots()) {
+                if (!list.contains(sourceRoot))
+                    list.add(sourceRoot);
+            }
+        }
+        return new Roots(list.toArray(new VirtualFile[list.size()]));
+    }
+
+    @NotNull
+    private Roots getRoots() {
+        return roots.getValue();
+    }
+
+    @NotNull
+    public VirtualFile[] getSourceRoots() {
+        return getRoots().roots;
+    }
+
+    /**
+     * @param file 文件或目录
+     * @return 包含它的源码根目录
+     */
+    @Nullable
+    public VirtualFile getSourceRoot(@NotNull VirtualFile file) {
+        VirtualFile root = getRoots().trie.find(file.getPath());
+        // 根目录被删除，等待 roots 变化后重建
+        return root != null && root.isValid() ? root : null;
+    }
+
+    /**
+     * @param file 文件
+     * @return 相对于源码根目录的路径，/ 分隔，不在任何根目录下时为 null
+     */
+    @Nullable
+    public String getRelativePath(@NotNull VirtualFile file) {
+        VirtualFile root = getSourceRoot(file);
+        if (root == null)
+            return null;
+        String path = file.getPath();
+        int start = root.getPath().length();
+        while (start < path.length() && path.charAt(start) == '/')
+            start++;
+        return path.substring(start);
+    }
+
+    public boolean isSourceRoot(@NotNull VirtualFile dir) {
+        return getRoots().trie.isRoot(dir.getPath());
+    }
+}
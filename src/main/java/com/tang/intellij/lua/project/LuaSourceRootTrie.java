@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.project;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按路径分段组织的源码根目录前缀树
+ * 查找一个路径所在的根目录只需要按路径深度走一遍，和根目录的数量无关
+ * 根目录嵌套时取最深的一个
+ */
+public class LuaSourceRootTrie<T> {
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>(4);
+        private T root;
+    }
+
+    private final Node<T> top = new Node<>();
+
+    /**
+     * 同一个路径添加多次时保留第一个
+     * @param path 根目录路径，/ 分隔
+     * @param root 根目录
+     */
+    public void add(@NotNull String path, @NotNull T root) {
+        Node<T> node = top;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = nextSeparator(path, start);
+            if (end > start)
+                node = node.children.computeIfAbsent(path.substring(start, end), k -> new Node<>());
+            start = end + 1;
+        }
+        if (node.root == null)
+            node.root = root;
+    }
+
+    /**
+     * @param path 文件路径，/ 分隔
+     * @return 包含这个路径的最深的根目录
+     */
+    @Nullable
+    public T find(@NotNull String path) {
+        Node<T> node = top;
+        T found = node.root;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = nextSeparator(path, start);
+            if (end > start) {
+                node = node.children.get(path.substring(start, end));
+                if (node == null)
+                    break;
+                if (node.root != null)
+                    found = node.root;
+            }
+            start = end + 1;
+        }
+        return found;
+    }
+
+    /**
+     * @param path 路径
+     * @return 这个路径本身是否是根目录
+     */
+    public boolean isRoot(@NotNull String path) {
+        Node<T> node = top;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = nextSeparator(path, start);
+            if (end > start) {
+                node = node.children.get(path.substring(start, end));
+                if (node == null)
+                    return false;
+            }
+            start = end + 1;
+        }
+        return node.root != null;
+    }
+
+    private static int nextSeparator(String path, int start) {
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.length() : end;
+    }
+}
@@ -18,22 +18,38 @@ package com.tang.intellij.lua.psi;
 
 import com.intellij.extapi.psi.PsiFileBase;
 import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.psi.FileViewProvider;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.ParameterizedCachedValue;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.ArrayUtil;
+import com.tang.intellij.lua.comment.psi.api.LuaComment;
 import com.tang.intellij.lua.lang.LuaFileType;
 import com.tang.intellij.lua.lang.LuaLanguage;
+import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.LuaFileStub;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
 
 /**
  * Created by TangZhiXu on 2015/11/15.
  * Email:272669294@qq.com
  */
-public class LuaFile extends PsiFileBase {
+public class LuaFile extends PsiFileBase implements LuaSymbolTable.Owner {
+
+    private volatile LuaSymbolTable symbolTable;
+
     public LuaFile(@NotNull FileViewProvider fileViewProvider) {
         super(fileViewProvider, LuaLanguage.INSTANCE);
     }
@@ -44,27 +60,257 @@ public class LuaFile extends PsiFileBase {
         return LuaFileType.INSTANCE;
     }
 
+    /**
+     * 文件顶层的 local 符号表
+     */
+    @NotNull
+    @Override
+    public LuaSymbolTable getSymbolTable() {
+        LuaSymbolTable table = symbolTable;
+        if (table == null) {
+            table = LuaSymbolTable.build(this);
+            symbolTable = table;
+        }
+        return table;
+    }
+
+    @Override
+    public void subtreeChanged() {
+        super.subtreeChanged();
+        symbolTable = null;
+    }
+
+    private static final Key<ParameterizedCachedValue<ReturnedType, SearchContext>> RETURNED_TYPE = Key.create("lua.file.returned_type");
+
+    /**
+     * 返回类型以及它是否只由 stub 得到
+     * 只由 stub 得到的结果只依赖 require 链上的文件，否则任何 PSI 修改都可能影响它
+     */
+    private static class ReturnedType {
+        private final LuaTypeSet typeSet;
+        private final boolean fromStub;
+        private final List<Object> dependencies;
+
+        ReturnedType(LuaTypeSet typeSet, boolean fromStub, List<Object> dependencies) {
+            this.typeSet = typeSet;
+            this.fromStub = fromStub;
+            this.dependencies = dependencies;
+        }
+    }
+
     /**
      * 获取最后返回的类型
+     * stub 中能确定时不加载 AST，结果只依赖 require 链上的文件
      * @return LuaTypeSet
      */
     public LuaTypeSet getReturnedType(SearchContext context) {
-        StubElement greenStub = getGreenStub();
-        if (greenStub instanceof LuaFileStub)
-            return ((LuaFileStub) greenStub).getReturnedType(context);
-        return guessReturnedType(context);
+        // 索引不可用时的结果不完整，不缓存
+        if (context.isDumb())
+            return computeReturnedType(context).typeSet;
+        return getReturnedTypeInfo(context).typeSet;
+    }
+
+    @NotNull
+    private ReturnedType getReturnedTypeInfo(SearchContext context) {
+        return CachedValuesManager.getManager(getProject()).getParameterizedCachedValue(this, RETURNED_TYPE, ctx -> {
+            ReturnedType returnedType = computeReturnedType(ctx);
+            return CachedValueProvider.Result.create(returnedType, ArrayUtil.toObjectArray(returnedType.dependencies));
+        }, false, context);
+    }
+
+    @NotNull
+    private ReturnedType computeReturnedType(SearchContext context) {
+        List<Object> dependencies = new ArrayList<>();
+        dependencies.add(this);
+        LuaTypeSet set;
+        boolean fromStub;
+        LuaFileStub stub = getExportStub();
+        if (stub != null && stub.hasReturnedType()) {
+            set = stub.getReturnedType();
+            fromStub = true;
+            String module = stub.getReturnedModule();
+            // 建 stub 时不能跨文件
+            if (module != null && context.getCurrentStubFile() == null && context.push(this, SearchContext.Overflow.FileReturn)) {
+                LuaFile file = resolveRequiredFile(module, dependencies);
+                if (file != null) {
+                    ReturnedType moduleType = context.isDumb() ? file.computeReturnedType(context) : file.getReturnedTypeInfo(context);
+                    // require 链上更远的文件变化也会影响结果
+                    dependencies.addAll(moduleType.dependencies);
+                    fromStub = moduleType.fromStub;
+                    if (moduleType.typeSet != null)
+                        set = set == null ? moduleType.typeSet : set.union(moduleType.typeSet);
+                }
+                context.pop(this);
+            }
+        } else {
+            set = guessReturnedType(context);
+            fromStub = false;
+        }
+        // 从 AST 推断的结果可能依赖其它文件中的全局定义
+        if (!fromStub)
+            dependencies.add(PsiModificationTracker.MODIFICATION_COUNT);
+        return new ReturnedType(set, fromStub, dependencies);
+    }
+
+    @Nullable
+    private LuaFile resolveRequiredFile(String module, List<Object> dependencies) {
+        LuaFile file = LuaPsiResolveUtil.resolveRequireFile(module, getProject());
+        // 找不到的模块在文件增加之后才可能出现
+        dependencies.add(file != null ? file : VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS);
+        return file;
+    }
+
+    /**
+     * 可以不加载 AST 使用的 stub
+     */
+    @Nullable
+    private LuaFileStub getExportStub() {
+        StubElement stub = getGreenStub();
+        if (stub == null && !isContentsLoaded())
+            stub = getStub();
+        return stub instanceof LuaFileStub ? (LuaFileStub) stub : null;
+    }
+
+    /**
+     * 这个文件 require 的所有模块
+     * @return 模块名，用 . 分隔
+     */
+    @NotNull
+    public List<String> getRequiredModules() {
+        LuaFileStub stub = getExportStub();
+        if (stub != null)
+            return Arrays.asList(stub.getRequiredModules());
+        return collectRequiredModules(this);
+    }
+
+    @NotNull
+    public static List<String> collectRequiredModules(@NotNull LuaFile file) {
+        Set<String> modules = new LinkedHashSet<>();
+        PsiTreeUtil.processElements(file, element -> {
+            if (element instanceof LuaCallExpr) {
+                String module = LuaPsiResolveUtil.getRequireModuleName((LuaCallExpr) element);
+                if (module != null)
+                    modules.add(module);
+            }
+            return true;
+        });
+        return new ArrayList<>(modules);
+    }
+
+    @Nullable
+    private LuaReturnStat findLastReturn() {
+        Ref<LuaReturnStat> returnStatRef = Ref.create();
+        LuaPsiTreeUtil.walkTopLevelInFile(getLastChild(), LuaReturnStat.class, luaReturnStat -> {
+            returnStatRef.set(luaReturnStat);
+            return false;
+        });
+        return returnStatRef.get();
+    }
+
+    /**
+     * 最后 return 的第一个值
+     */
+    @Nullable
+    private LuaExpr findReturnedExpr() {
+        LuaReturnStat returnStat = findLastReturn();
+        LuaExprList exprList = returnStat == null ? null : returnStat.getExprList();
+        if (exprList == null || exprList.getExprList().isEmpty())
+            return null;
+        return exprList.getExprList().get(0);
+    }
+
+    /**
+     * return M 时 M 对应的 local 定义
+     */
+    @Nullable
+    private static LuaNameDef findReturnedLocal(@NotNull LuaExpr expr, @NotNull SearchContext context) {
+        PsiElement element = expr;
+        while (element instanceof LuaValueExpr || element instanceof LuaVar)
+            element = element.getFirstChild();
+        if (!(element instanceof LuaNameExpr))
+            return null;
+        PsiElement def = LuaPsiResolveUtil.resolveLocal((LuaNameExpr) element, context);
+        if (!(def instanceof LuaNameDef) || !(def.getParent() instanceof LuaNameList) || !(def.getParent().getParent() instanceof LuaLocalDef))
+            return null;
+        return (LuaNameDef) def;
+    }
+
+    /**
+     * local 定义中和 nameDef 同一位置的值
+     */
+    @Nullable
+    private static LuaExpr getLocalValue(@NotNull LuaNameDef nameDef) {
+        LuaLocalDef localDef = (LuaLocalDef) nameDef.getParent().getParent();
+        LuaExprList valueList = localDef.getExprList();
+        if (valueList == null)
+            return null;
+        int index = ((LuaNameList) nameDef.getParent()).getNameDefList().indexOf(nameDef);
+        List<LuaExpr> values = valueList.getExprList();
+        return index >= 0 && index < values.size() ? values.get(index) : null;
+    }
+
+    /**
+     * 文件转发的模块名：return require "x"
+     * 或者 local M = require "x" ... return M （M 没有类型注释时）
+     * 只在本文件内查找，建 stub 时使用
+     */
+    @Nullable
+    public String findReturnedModule() {
+        LuaExpr expr = findReturnedExpr();
+        if (expr == null)
+            return null;
+        String module = LuaPsiResolveUtil.findRequireModuleName(expr);
+        if (module != null)
+            return module;
+
+        SearchContext context = new SearchContext(getProject()).setCurrentStubFile(this);
+        LuaNameDef nameDef = findReturnedLocal(expr, context);
+        if (nameDef == null)
+            return null;
+        // 和 AST 推断一样，注释优先
+        LuaComment comment = ((LuaLocalDef) nameDef.getParent().getParent()).getComment();
+        LuaTypeSet commentType = LuaPsiImplUtil.guessStubType(comment, null, context);
+        if (commentType != null && !commentType.isEmpty())
+            return null;
+        LuaExpr value = getLocalValue(nameDef);
+        return value == null ? null : LuaPsiResolveUtil.findRequireModuleName(value);
+    }
+
+    /**
+     * 只在本文件内就能确定的返回类型，建 stub 时使用
+     * 返回字面量、table 构造，或者返回 local ，它有 ---@type / ---@class 注释、用字面量或 table 构造初始化
+     * @return 其它情况（包括跨文件的部分）为 null ，查询时按 AST 推断
+     */
+    @Nullable
+    public LuaTypeSet guessStubReturnedType() {
+        LuaExpr expr = findReturnedExpr();
+        if (expr == null)
+            return null;
+        SearchContext context = new SearchContext(getProject()).setCurrentStubFile(this);
+        LuaNameDef nameDef = findReturnedLocal(expr, context);
+        if (nameDef == null)
+            return LuaPsiImplUtil.guessStubType(null, expr, context);
+
+        // 和 LuaPsiResolveUtil.resolveType 的顺序一致：注释、值、匿名类型
+        LuaComment comment = ((LuaLocalDef) nameDef.getParent().getParent()).getComment();
+        LuaTypeSet typeSet = LuaPsiImplUtil.guessStubType(comment, null, context);
+        if (typeSet != null && !typeSet.isEmpty())
+            return typeSet;
+        LuaExpr value = getLocalValue(nameDef);
+        if (value != null) {
+            typeSet = LuaPsiImplUtil.guessStubType(null, value, context);
+            if (typeSet == null)
+                return null;
+            if (!typeSet.isEmpty())
+                return typeSet;
+        }
+        return LuaTypeSet.create(LuaType.createAnonymousType(nameDef));
     }
 
     public LuaTypeSet guessReturnedType(SearchContext context) {
         LuaTypeSet set = null;
         if (context.push(this, SearchContext.Overflow.FileReturn)) {
-            PsiElement lastChild = getLastChild();
-            Ref<LuaReturnStat> returnStatRef = Ref.create();
-            LuaPsiTreeUtil.walkTopLevelInFile(lastChild, LuaReturnStat.class, luaReturnStat -> {
-                returnStatRef.set(luaReturnStat);
-                return false;
-            });
-            set = LuaPsiImplUtil.guessReturnTypeSet(returnStatRef.get(), 0, context);
+            set = LuaPsiImplUtil.guessReturnTypeSet(findLastReturn(), 0, context);
             context.pop(this);
         }
         return set;
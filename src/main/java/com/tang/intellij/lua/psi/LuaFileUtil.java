@@ -19,18 +19,24 @@ package com.tang.intellij.lua.psi;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.openapi.extensions.PluginId;
-import com.intellij.openapi.module.Module;
-import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.search.ProjectScope;
 import com.intellij.util.SmartList;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.tang.intellij.lua.project.LuaSettings;
+import com.tang.intellij.lua.project.LuaSourceRootManager;
+import com.tang.intellij.lua.stubs.index.LuaModuleNameIndex;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.List;
 
 /**
  *
@@ -55,17 +61,14 @@ public class LuaFileUtil {
             return null;
 
         shortUrl = shortUrl.replace('\\', '/').trim();
-        Module[] modules = ModuleManager.getInstance(project).getModules();
-        for (Module module : modules) {
-            String[] sourceRoots = ModuleRootManager.getInstance(module).getSourceRootUrls();
-            //相对路径
-            for (String sourceRoot : sourceRoots) {
-                for (String ext : extensions) {
-                    VirtualFile file = VirtualFileManager.getInstance().findFileByUrl(sourceRoot + "/" + shortUrl + ext);
-                    if (file != null && !file.isDirectory()) {
-                        return file;
-                    }
-                }
+        while (shortUrl.startsWith("./"))
+            shortUrl = shortUrl.substring(2);
+
+        //相对路径
+        for (String ext : extensions) {
+            VirtualFile file = findInSourceRoots(project, shortUrl + ext);
+            if (file != null) {
+                return file;
             }
         }
 
@@ -79,16 +82,98 @@ public class LuaFileUtil {
         return null;
     }
 
+    /**
+     * 按 require 的模块名找文件，使用 LuaSettings 中的路径模板
+     * @param project Project
+     * @param moduleName a.b.c
+     * @return VirtualFile
+     */
+    @Nullable
+    public static VirtualFile findModuleFile(@NotNull Project project, @NotNull String moduleName) {
+        String path = moduleName.replace('.', '/');
+        for (String template : LuaSettings.getInstance().getRequirePathTemplates()) {
+            VirtualFile file = findInSourceRoots(project, template.replace("?", path));
+            if (file != null)
+                return file;
+        }
+        return null;
+    }
+
+    /**
+     * 文件可以被 require 的模块名，findModuleFile 的逆过程
+     * @param project Project
+     * @param file VirtualFile
+     * @return a.b.c
+     */
+    @NotNull
+    public static List<String> getModuleNames(@NotNull Project project, @NotNull VirtualFile file) {
+        List<String> list = new SmartList<>();
+        String relativePath = LuaSourceRootManager.getInstance(project).getRelativePath(file);
+        if (relativePath == null)
+            return list;
+        for (String template : LuaSettings.getInstance().getRequirePathTemplates()) {
+            int index = template.indexOf('?');
+            if (index < 0)
+                continue;
+            String prefix = template.substring(0, index);
+            String suffix = template.substring(index + 1);
+            if (relativePath.length() > prefix.length() + suffix.length()
+                    && relativePath.startsWith(prefix) && relativePath.endsWith(suffix)) {
+                String path = relativePath.substring(prefix.length(), relativePath.length() - suffix.length());
+                String moduleName = path.replace('/', '.');
+                if (!list.contains(moduleName))
+                    list.add(moduleName);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 相对于某个源码根目录的文件
+     * 通过 LuaModuleNameIndex 找到同名文件再校验路径
+     * 索引不可用或者文件不会被索引（其它扩展名、没有扩展名）时逐个根目录查找
+     */
+    @Nullable
+    private static VirtualFile findInSourceRoots(@NotNull Project project, @NotNull String relativePath) {
+        String fileName = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+        if (DumbService.isDumb(project) || relativePath.contains("../") || !LuaModuleNameIndex.isIndexed(fileName)) {
+            for (VirtualFile sourceRoot : LuaSourceRootManager.getInstance(project).getSourceRoots()) {
+                VirtualFile file = sourceRoot.findFileByRelativePath(relativePath);
+                if (file != null && !file.isDirectory()) {
+                    return file;
+                }
+            }
+            return null;
+        }
+
+        Collection<VirtualFile> files = FileBasedIndex.getInstance().getContainingFiles(LuaModuleNameIndex.NAME,
+                LuaModuleNameIndex.getKey(relativePath),
+                ProjectScope.getAllScope(project));
+        for (VirtualFile file : files) {
+            if (!file.getName().equals(fileName))
+                continue;
+            VirtualFile root = file;
+            for (int i = relativePath.indexOf('/'); i >= 0 && root != null; i = relativePath.indexOf('/', i + 1)) {
+                root = root.getParent();
+            }
+            if (root != null && isSourceRoot(project, root.getParent())
+                    && relativePath.equals(VfsUtilCore.getRelativePath(file, root.getParent(), '/'))) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSourceRoot(@NotNull Project project, @Nullable VirtualFile dir) {
+        return dir != null && LuaSourceRootManager.getInstance(project).isSourceRoot(dir);
+    }
+
     public static VirtualFile[] getPackages(Project project, String shortUrl) {
-        Module[] modules = ModuleManager.getInstance(project).getModules();
         SmartList<VirtualFile> list = new SmartList<>();
-        for (Module module : modules) {
-            String[] sourceRoots = ModuleRootManager.getInstance(module).getSourceRootUrls();
-            for (String sourceRoot : sourceRoots) {
-                VirtualFile file = VirtualFileManager.getInstance().findFileByUrl(sourceRoot + "/" + shortUrl);
-                if (file != null) {
-                    list.add(file);
-                }
+        for (VirtualFile sourceRoot : LuaSourceRootManager.getInstance(project).getSourceRoots()) {
+            VirtualFile file = sourceRoot.findFileByRelativePath(shortUrl);
+            if (file != null) {
+                list.add(file);
             }
         }
         return list.toArray(new VirtualFile[list.size()]);
@@ -99,38 +184,13 @@ public class LuaFileUtil {
     }
 
     public static String getShortUrl(Project project, VirtualFile file) {
-        String fileFullUrl = file.getUrl();
-        String fileShortUrl = fileFullUrl;
-
-        Module[] modules = ModuleManager.getInstance(project).getModules();
-        moduleLoop: for (Module module : modules) {
-            VirtualFile[] sourceRoots = ModuleRootManager.getInstance(module).getSourceRoots();
-            for (VirtualFile sourceRoot : sourceRoots) {
-                String sourceRootUrl = sourceRoot.getUrl();
-                if (fileFullUrl.startsWith(sourceRootUrl)) {
-                    fileShortUrl = fileFullUrl.substring(sourceRootUrl.length() + 1);
-                    break moduleLoop;
-                }
-            }
-        }
-        return fileShortUrl;
+        String relativePath = LuaSourceRootManager.getInstance(project).getRelativePath(file);
+        return relativePath != null ? relativePath : file.getUrl();
     }
 
     @Nullable
     public static VirtualFile getSourceRoot(Project project, VirtualFile file) {
-        String fileFullUrl = file.getUrl();
-
-        Module[] modules = ModuleManager.getInstance(project).getModules();
-        for (Module module : modules) {
-            VirtualFile[] sourceRoots = ModuleRootManager.getInstance(module).getSourceRoots();
-            for (VirtualFile sourceRoot : sourceRoots) {
-                String sourceRootUrl = sourceRoot.getUrl();
-                if (fileFullUrl.startsWith(sourceRootUrl)) {
-                    return sourceRoot;
-                }
-            }
-        }
-        return null;
+        return LuaSourceRootManager.getInstance(project).getSourceRoot(file);
     }
 
     @Nullable
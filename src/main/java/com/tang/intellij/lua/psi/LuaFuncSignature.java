@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.psi;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 省略可选参数后的一种函数签名，如 (a, b) / (a)
+ * mask 的第 i 位表示保留第 i 个参数
+ * 生成时先完整签名和省略所有可选参数的签名，再按省略参数个数从少到多，最多 MAX_SIGNATURES 个
+ * 这样按个数截断时总会保留最长和最短的两个
+ */
+public class LuaFuncSignature {
+
+    public static final int MAX_SIGNATURES = 64;
+
+    // mask 是 int，之后的参数都当作必选
+    private static final int MAX_OPTIONAL_INDEX = 30;
+
+    private final String signature;
+    private final int mask;
+
+    private LuaFuncSignature(String signature, int mask) {
+        this.signature = signature;
+        this.mask = mask;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * 不修改 params，可以在多个线程中同时调用
+     */
+    @NotNull
+    public static LuaFuncSignature[] generate(@NotNull LuaParamInfo[] params) {
+        List<Integer> optional = new ArrayList<>();
+        for (int i = 0; i < params.length && i <= MAX_OPTIONAL_INDEX; i++) {
+            if (params[i].isOptional())
+                optional.add(i);
+        }
+        int fullMask = params.length > MAX_OPTIONAL_INDEX ? -1 : (1 << params.length) - 1;
+        List<LuaFuncSignature> list = new ArrayList<>();
+        list.add(create(params, fullMask));
+        if (optional.isEmpty())
+            return list.toArray(new LuaFuncSignature[list.size()]);
+        int minimalMask = fullMask;
+        for (int index : optional)
+            minimalMask &= ~(1 << index);
+        list.add(create(params, minimalMask));
+        // 其余的依次省略 k 个可选参数，按组合的字典序
+        for (int k = 1; k < optional.size() && list.size() < MAX_SIGNATURES; k++) {
+            int[] indices = new int[k];
+            for (int i = 0; i < k; i++)
+                indices[i] = i;
+            while (list.size() < MAX_SIGNATURES) {
+                int mask = fullMask;
+                for (int index : indices)
+                    mask &= ~(1 << optional.get(index));
+                list.add(create(params, mask));
+                // 下一个组合
+                int i = k - 1;
+                while (i >= 0 && indices[i] == optional.size() - k + i)
+                    i--;
+                if (i < 0)
+                    break;
+                indices[i]++;
+                for (int j = i + 1; j < k; j++)
+                    indices[j] = indices[j - 1] + 1;
+            }
+        }
+        return list.toArray(new LuaFuncSignature[list.size()]);
+    }
+
+    private static LuaFuncSignature create(LuaParamInfo[] params, int mask) {
+        StringBuilder sb = new StringBuilder("(");
+        boolean first = true;
+        for (int i = 0; i < params.length; i++) {
+            if (i <= MAX_OPTIONAL_INDEX && (mask & (1 << i)) == 0)
+                continue;
+            if (!first)
+                sb.append(", ");
+            sb.append(params[i].getName());
+            first = false;
+        }
+        sb.append(")");
+        return new LuaFuncSignature(sb.toString(), mask);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.psi;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.tang.intellij.lua.comment.psi.LuaDocParamNameRef;
+import com.tang.intellij.lua.search.SearchContext;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一个文件里 local 变量、参数、local function 被引用的次数
+ * 整个文件遍历一次得到，文件修改后重新计算
+ * 用来代替对每个定义做一次 ReferencesSearch
+ */
+public class LuaLocalUsages {
+
+    @NotNull
+    public static LuaLocalUsages getInstance(@NotNull PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(build(file), file));
+    }
+
+    private final Map<PsiElement, Integer> counts = new HashMap<>();
+
+    private LuaLocalUsages() {
+    }
+
+    @NotNull
+    private static LuaLocalUsages build(@NotNull PsiFile file) {
+        LuaLocalUsages usages = new LuaLocalUsages();
+        SearchContext context = new SearchContext(file.getProject());
+        file.accept(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(PsiElement element) {
+                if (element instanceof LuaNameExpr) {
+                    usages.add(LuaPsiResolveUtil.resolveLocal((LuaNameExpr) element, context));
+                } else if (element instanceof LuaDocParamNameRef) {
+                    // ---@param name 也算引用
+                    PsiReference reference = element.getReference();
+                    if (reference != null)
+                        usages.add(reference.resolve());
+                }
+                super.visitElement(element);
+            }
+        });
+        return usages;
+    }
+
+    private void add(PsiElement def) {
+        if (def != null)
+            counts.merge(def, 1, Integer::sum);
+    }
+
+    /**
+     * @param def LuaNameDef, LuaParamNameDef 或者 LuaLocalFuncDef
+     * @return 文件中引用它的次数
+     */
+    public int getUsageCount(@NotNull PsiElement def) {
+        Integer count = counts.get(def);
+        return count == null ? 0 : count;
+    }
+
+    public boolean isUsed(@NotNull PsiElement def) {
+        return counts.containsKey(def);
+    }
+}
@@ -49,11 +49,15 @@ public class LuaParamInfo {
         this.types = types;
     }
 
+    /**
+     * 格式：name, var-int (类型个数 << 1 | optional), 类型名
+     */
     public static LuaParamInfo deserialize(StubInputStream stubInputStream) throws IOException {
         LuaParamInfo paramInfo = new LuaParamInfo();
         paramInfo.setName(StringRef.toString(stubInputStream.readName()));
-        paramInfo.setOptional(stubInputStream.readBoolean());
-        int len = stubInputStream.readByte();
+        int lenAndOptional = stubInputStream.readVarInt();
+        paramInfo.setOptional((lenAndOptional & 1) != 0);
+        int len = lenAndOptional >>> 1;
         String[] types = new String[len];
         for (int i = 0; i < len; i++) {
             types[i] = StringRef.toString(stubInputStream.readName());
@@ -64,8 +68,7 @@ public class LuaParamInfo {
 
     public static void serialize(LuaParamInfo param, StubOutputStream stubOutputStream) throws IOException {
         stubOutputStream.writeName(param.getName());
-        stubOutputStream.writeBoolean(param.isOptional());
-        stubOutputStream.writeByte(param.types.length);
+        stubOutputStream.writeVarInt(param.types.length << 1 | (param.isOptional() ? 1 : 0));
         for (int i = 0; i < param.types.length; i++) {
             stubOutputStream.writeName(param.types[i]);
         }
@@ -29,13 +29,16 @@ import com.intellij.psi.stubs.StubElement;
 import com.intellij.psi.util.CachedValueProvider;
 import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.psi.util.ParameterizedCachedValue;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.tang.intellij.lua.comment.LuaCommentUtil;
 import com.tang.intellij.lua.comment.psi.*;
 import com.tang.intellij.lua.comment.psi.api.LuaComment;
 import com.tang.intellij.lua.lang.LuaIcons;
+import com.tang.intellij.lua.lang.type.LuaTableType;
 import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
+import com.tang.intellij.lua.project.LuaSettings;
 import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.*;
 import org.jetbrains.annotations.NotNull;
@@ -43,7 +46,6 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -92,9 +94,15 @@ public class LuaPsiImplUtil {
         return GlobalSearchScope.fileScope(nameDef.getContainingFile());
     }
 
+    /**
+     * 引用对象在文件修改前保持不变，这样 ResolveCache 才能命中
+     * @param element element
+     * @return PsiReference[]
+     */
     @NotNull
     public static PsiReference[] getReferences(LuaPsiElement element) {
-        return ReferenceProvidersRegistry.getReferencesFromProviders(element, PsiReferenceService.Hints.NO_HINTS);
+        return CachedValuesManager.getCachedValue(element, () -> CachedValueProvider.Result.create(
+                ReferenceProvidersRegistry.getReferencesFromProviders(element, PsiReferenceService.Hints.NO_HINTS), element));
     }
 
     /**
@@ -297,6 +305,74 @@ public class LuaPsiImplUtil {
         return null;
     }
 
+    /**
+     * A, B = x, y 中和 nameExpr 同一位置的值
+     * @param nameExpr 赋值语句左边的名字
+     * @return 对应的表达式，没有时为 null
+     */
+    @Nullable
+    public static LuaExpr getAssignedExpr(@NotNull LuaNameExpr nameExpr) {
+        PsiElement var = nameExpr.getParent();
+        LuaAssignStat assignStat = PsiTreeUtil.getParentOfType(nameExpr, LuaAssignStat.class);
+        if (!(var instanceof LuaVar) || assignStat == null)
+            return null;
+        LuaExprList exprList = assignStat.getExprList();
+        if (exprList == null)
+            return null;
+        int index = assignStat.getVarList().getVarList().indexOf(var);
+        List<LuaExpr> exprs = exprList.getExprList();
+        return index >= 0 && index < exprs.size() ? exprs.get(index) : null;
+    }
+
+    /**
+     * 赋值给 nameExpr 的类型，优先从注释猜，再从同一位置的值猜
+     * stub 中没有类型摘要时按它推断，和 guessStubType 能确定的部分结果相同
+     * @param nameExpr 赋值语句左边的名字
+     * @param context SearchContext
+     * @return LuaTypeSet
+     */
+    @Nullable
+    public static LuaTypeSet guessAssignedType(@NotNull LuaNameExpr nameExpr, @NotNull SearchContext context) {
+        LuaTypeSet typeSet = guessCommentType(nameExpr, context);
+        if (typeSet != null)
+            return typeSet;
+        LuaExpr expr = getAssignedExpr(nameExpr);
+        return expr == null ? null : expr.guessType(context);
+    }
+
+    /**
+     * 赋值语句注释中声明的类型
+     */
+    @Nullable
+    private static LuaTypeSet guessCommentType(@NotNull LuaNameExpr nameExpr, @NotNull SearchContext context) {
+        LuaAssignStat assignStat = PsiTreeUtil.getParentOfType(nameExpr, LuaAssignStat.class);
+        LuaComment comment = assignStat == null ? null : assignStat.getComment();
+        return comment == null ? null : comment.guessType(context);
+    }
+
+    /**
+     * 只在本文件内就能确定的类型：---@type / ---@class 注释、字面量、table 构造
+     * 和 AST 推断的结果相同，stub 只记录这些，其它情况为 null ，查询时按 AST 推断
+     * @param comment 注释，可以为 null
+     * @param value 值，可以为 null
+     * @param context SearchContext
+     * @return 不能确定时为 null
+     */
+    @Nullable
+    public static LuaTypeSet guessStubType(@Nullable LuaComment comment, @Nullable LuaExpr value, @NotNull SearchContext context) {
+        if (comment != null) {
+            LuaTypeSet typeSet = comment.guessType(context);
+            if (typeSet != null)
+                return typeSet;
+        }
+        PsiElement child = value instanceof LuaValueExpr ? value.getFirstChild() : value;
+        if (child instanceof LuaTableConstructor)
+            return LuaTypeSet.create(LuaTableType.create((LuaTableConstructor) child));
+        if (child instanceof LuaLiteralExpr)
+            return ((LuaLiteralExpr) child).guessType(context);
+        return null;
+    }
+
     public static LuaTypeSet guessPrefixType(LuaIndexExpr indexExpr, SearchContext context) {
         LuaExpr prefix = (LuaExpr) indexExpr.getFirstChild();
         if (prefix != null)
@@ -387,23 +463,35 @@ public class LuaPsiImplUtil {
         return list;
     }
 
+    /**
+     * 返回类型：优先使用 ---@return 声明，没有声明时从 return 语句推断
+     * stub 里只有声明的类型，推断在索引之后按需进行并缓存
+     */
     public static LuaTypeSet guessReturnTypeSet(LuaFuncBodyOwner owner, SearchContext searchContext) {
         if (owner instanceof StubBasedPsiElementBase) {
             StubBasedPsiElementBase stubElement = (StubBasedPsiElementBase) owner;
             StubElement stub = stubElement.getStub();
             if (stub instanceof LuaFuncBodyOwnerStub) {
-                LuaFuncBodyOwnerStub funcBodyOwnerStub = (LuaFuncBodyOwnerStub) stub;
-                return funcBodyOwnerStub.getReturnTypeSet();
+                LuaTypeSet declared = ((LuaFuncBodyOwnerStub) stub).getReturnTypeSet();
+                return declared != null ? declared : inferReturnTypeSet(owner, searchContext);
             }
         }
 
         return guessReturnTypeSetOriginal(owner, searchContext);
     }
 
-    private static final Key<ParameterizedCachedValue<LuaTypeSet, SearchContext>> FUNCTION_RETURN_TYPESET = Key.create("lua.function.return_typeset");
-
     @NotNull
     public static LuaTypeSet guessReturnTypeSetOriginal(LuaFuncBodyOwner owner, SearchContext searchContext) {
+        LuaTypeSet declared = getDeclaredReturnTypeSet(owner, searchContext);
+        return declared != null ? declared : inferReturnTypeSet(owner, searchContext);
+    }
+
+    /**
+     * ---@return 声明的返回类型，只看注释，建立 stub 时使用
+     * @return 没有声明时为 null
+     */
+    @Nullable
+    public static LuaTypeSet getDeclaredReturnTypeSet(LuaFuncBodyOwner owner, SearchContext searchContext) {
         if (owner instanceof LuaCommentOwner) {
             LuaComment comment = LuaCommentUtil.findComment((LuaCommentOwner) owner);
             if (comment != null) {
@@ -413,8 +501,19 @@ public class LuaPsiImplUtil {
                 }
             }
         }
+        return null;
+    }
 
-        //infer from return stat
+    private static final Key<ParameterizedCachedValue<LuaTypeSet, SearchContext>> FUNCTION_RETURN_TYPESET = Key.create("lua.function.return_typeset");
+
+    /**
+     * 从 return 语句推断返回类型，会跨文件查找，索引期间不推断
+     * 结果依赖函数本身以及其它文件的结构变化
+     */
+    @NotNull
+    private static LuaTypeSet inferReturnTypeSet(LuaFuncBodyOwner owner, SearchContext searchContext) {
+        if (searchContext.isDumb())
+            return LuaTypeSet.create();
         return CachedValuesManager.getManager(owner.getProject()).getParameterizedCachedValue(owner, FUNCTION_RETURN_TYPESET, (ctx) -> {
             LuaTypeSet typeSet = LuaTypeSet.create();
             Ref<LuaTypeSet> setRef = Ref.create(typeSet);
@@ -435,7 +534,7 @@ public class LuaPsiImplUtil {
                     o.acceptChildren(this);
                 }
             });
-            return CachedValueProvider.Result.create(setRef.get(), owner);
+            return CachedValueProvider.Result.create(setRef.get(), owner, PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT);
         }, false, searchContext);
     }
 
@@ -506,41 +605,29 @@ public class LuaPsiImplUtil {
         void accept(String signature, int mask);
     }
 
-    private static HashSet<Integer> sets = new HashSet<>();
-    public static void processOptional(LuaParamInfo[] params, OptionalFuncProcessor processor) {
-        sets.clear();
-        processOptionalFunc(params, processor);
+    /**
+     * 依次处理省略可选参数后的签名，个数受 LuaSettings 限制
+     * 完整签名和最短签名总是保留，有 stub 时使用 stub 中保存的签名
+     */
+    public static void processOptional(LuaFuncBodyOwner owner, OptionalFuncProcessor processor) {
+        processOptional(getSignatures(owner), processor);
     }
-    private static void processOptionalFunc(LuaParamInfo[] params, OptionalFuncProcessor processor) {
-        int mask = 0;
-        StringBuilder signature = new StringBuilder("(");
 
-        for (int i = 0; i < params.length; i++) {
-            LuaParamInfo info = params[i];
-            if (info != null) {
-                if (mask > 0) {
-                    signature.append(", ").append(info.getName());
-                } else {
-                    signature.append(info.getName());
-                }
-                mask = mask | (1 << i);
-            }
+    private static void processOptional(LuaFuncSignature[] signatures, OptionalFuncProcessor processor) {
+        int limit = Math.min(signatures.length, Math.max(2, LuaSettings.getInstance().getMaxOptionalSignatures()));
+        for (int i = 0; i < limit; i++) {
+            processor.accept(signatures[i].getSignature(), signatures[i].getMask());
         }
+    }
 
-        signature.append(")");
-        processor.accept(signature.toString(), mask);
-        sets.add(mask);
-        for (int i = 0; i < params.length; i++) {
-            LuaParamInfo info = params[i];
-            if (info != null && info.isOptional()) {
-                int s = mask ^ (1 << i);
-                if (!sets.contains(s)) {
-                    params[i] = null;
-                    processOptionalFunc(params, processor);
-                    params[i] = info;
-                }
-            }
+    @NotNull
+    public static LuaFuncSignature[] getSignatures(LuaFuncBodyOwner owner) {
+        if (owner instanceof StubBasedPsiElementBase) {
+            StubElement stub = ((StubBasedPsiElementBase) owner).getStub();
+            if (stub instanceof LuaFuncBodyOwnerStub)
+                return ((LuaFuncBodyOwnerStub) stub).getSignatures();
         }
+        return LuaFuncSignature.generate(owner.getParams());
     }
 
     public static PsiElement getNameIdentifier(LuaLocalFuncDef localFuncDef) {
@@ -30,11 +30,12 @@ import com.tang.intellij.lua.Constants;
 import com.tang.intellij.lua.comment.psi.LuaDocParamDef;
 import com.tang.intellij.lua.comment.psi.api.LuaComment;
 import com.tang.intellij.lua.lang.GuessTypeKind;
+import com.tang.intellij.lua.lang.type.LuaString;
 import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.reference.LuaReference;
+import com.tang.intellij.lua.search.LuaClassHierarchy;
 import com.tang.intellij.lua.search.SearchContext;
-import com.tang.intellij.lua.stubs.index.LuaClassIndex;
 import com.tang.intellij.lua.stubs.index.LuaGlobalFuncIndex;
 import com.tang.intellij.lua.stubs.index.LuaGlobalVarIndex;
 import org.jetbrains.annotations.NotNull;
@@ -49,24 +50,20 @@ import java.util.List;
  */
 public class LuaPsiResolveUtil {
 
+    // 根据名字猜类型时最多的结果数
+    private static final int MAX_GUESS_FROM_NAME = 20;
+
     static LuaFuncBodyOwner resolveFuncBodyOwner(@NotNull LuaNameExpr ref, SearchContext context) {
-        final Ref<LuaFuncBodyOwner> ret = Ref.create();
         String refName = ref.getName();
         //local 函数名
-        LuaPsiTreeUtil.walkUpLocalFuncDef(ref, localFuncDef -> {
-            if (refName.equals(localFuncDef.getName())) {
-                ret.set(localFuncDef);
-                return false;
-            }
-            return true;
-        });
+        LuaFuncBodyOwner owner = LuaSymbolTable.findLocalFuncDef(ref, refName);
 
         //global function
-        if (ret.isNull()) {
-            ret.set(LuaGlobalFuncIndex.find(refName, context));
+        if (owner == null) {
+            owner = LuaGlobalFuncIndex.find(refName, context);
         }
 
-        return ret.get();
+        return owner;
     }
 
     public static PsiElement resolveLocal(LuaNameExpr ref, SearchContext context) {
@@ -92,25 +89,12 @@ public class LuaPsiResolveUtil {
 
         //local 变量, 参数
         if (ret.isNull()) {
-            LuaPsiTreeUtil.walkUpLocalNameDef(ref, nameDef -> {
-                if (refName.equals(nameDef.getName())) {
-                    ret.set(nameDef);
-                    return false;
-                }
-                return true;
-            });
+            ret.set(LuaSymbolTable.findLocalNameDef(ref, refName));
         }
 
         //local 函数名
         if (ret.isNull()) {
-            LuaPsiTreeUtil.walkUpLocalFuncDef(ref, nameDef -> {
-                String name= nameDef.getName();
-                if (refName.equals(name)) {
-                    ret.set(nameDef);
-                    return false;
-                }
-                return true;
-            });
+            ret.set(LuaSymbolTable.findLocalFuncDef(ref, refName));
         }
 
         return ret.get();
@@ -131,13 +115,23 @@ public class LuaPsiResolveUtil {
             }
         }
 
-        PsiElement resolve = resolveLocal(ref, context);
-        if (resolve != null) {
-            if (!funcBody.getTextRange().contains(resolve.getTextRange()))
-                return true;
-        }
+        return isUpValue(funcBody, resolveLocal(ref, context));
+    }
+
+    /**
+     * 已经解析过的引用，不用再查一次
+     * @param ref 引用
+     * @param resolve ref 解析的结果
+     * @return 是否是 upvalue
+     */
+    public static boolean isUpValue(@NotNull LuaNameExpr ref, @Nullable PsiElement resolve) {
+        if (ref.getName().equals(Constants.WORD_SELF))
+            return isUpValue(ref, new SearchContext(ref.getProject()));
+        return isUpValue(PsiTreeUtil.getParentOfType(ref, LuaFuncBody.class), resolve);
+    }
 
-        return false;
+    private static boolean isUpValue(@Nullable LuaFuncBody funcBody, @Nullable PsiElement resolve) {
+        return funcBody != null && resolve != null && !funcBody.getTextRange().contains(resolve.getTextRange());
     }
 
     /**
@@ -211,6 +205,33 @@ public class LuaPsiResolveUtil {
         return null;
     }
 
+    @NotNull
+    public static PsiElement[] multiResolve(LuaIndexExpr indexExpr, SearchContext context) {
+        PsiElement id = indexExpr.getId();
+        if (id == null)
+            return PsiElement.EMPTY_ARRAY;
+
+        SmartList<PsiElement> list = new SmartList<>();
+        LuaTypeSet typeSet = indexExpr.guessPrefixType(context);
+        if (typeSet != null) {
+            String idString = id.getText();
+            for (LuaType type : typeSet.getTypes()) {
+                //属性
+                LuaClassField fieldDef = type.findField(idString, context);
+                if (fieldDef != null) {
+                    if (!list.contains(fieldDef))
+                        list.add(fieldDef);
+                    continue;
+                }
+                //方法
+                LuaClassMethodDef methodDef = type.findMethod(idString, context);
+                if (methodDef != null && !list.contains(methodDef))
+                    list.add(methodDef);
+            }
+        }
+        return list.toArray(new PsiElement[list.size()]);
+    }
+
     @Nullable
     static LuaTypeSet resolveType(LuaNameDef nameDef, SearchContext context) {
         LuaTypeSet typeSet = null;
@@ -259,16 +280,17 @@ public class LuaPsiResolveUtil {
             if (context.isGuessTypeKind(GuessTypeKind.FromName)) {
                 String str = nameDef.getText();
                 if (str.length() > 2) {
-                    final LuaTypeSet set = typeSet;
+                    final Ref<LuaTypeSet> setRef = Ref.create(typeSet);
+                    final int[] count = { 0 };
                     CamelHumpMatcher matcher = new CamelHumpMatcher(str, false);
-                    LuaClassIndex.getInstance().processAllKeys(context.getProject(), (cls) -> {
+                    LuaClassHierarchy.getInstance(context.getProject()).processClassNames(str, context, (cls) -> {
                         if (matcher.prefixMatches(cls)) {
-                            LuaType type = LuaType.create(cls, null);
-                            type.setUnreliable(true);
-                            set.addType(type);
+                            setRef.set(setRef.get().union(LuaType.createUnreliable(cls)));
+                            return ++count[0] < MAX_GUESS_FROM_NAME;
                         }
                         return true;
                     });
+                    typeSet = setRef.get();
                 }
             }
         }
@@ -298,10 +320,9 @@ public class LuaPsiResolveUtil {
                 LuaClassMethodDef classMethodDef = (LuaClassMethodDef) owner;
                 LuaType classType = classMethodDef.getClassType(context);
                 String methodName = classMethodDef.getName();
-                while (classType != null){
-                    classType = classType.getSuperClass(context);
-                    if (classType != null) {
-                        LuaClassMethodDef superMethod = classType.findMethod(methodName, context);
+                if (classType != null) {
+                    for (LuaType superType : classType.getSuperClasses(context)) {
+                        LuaClassMethodDef superMethod = superType.findMethod(methodName, context);
                         if (superMethod != null) {
                             LuaParamInfo[] params = superMethod.getParams();//todo : 优化
                             for (LuaParamInfo param : params) {
@@ -310,7 +331,7 @@ public class LuaPsiResolveUtil {
                                     if (types.length > 0) {
                                         LuaTypeSet set = LuaTypeSet.create();
                                         for (String type : types) {
-                                            set.addType(LuaType.create(type, null));
+                                            set = set.union(LuaType.create(type, null));
                                         }
                                         return set;
                                     }
@@ -324,6 +345,36 @@ public class LuaPsiResolveUtil {
         return null;
     }
 
+    /**
+     * require "a.b.c" / require("a/b/c") 中的模块名，统一用 . 分隔
+     * @param callExpr 调用表达式
+     * @return 不是 require 调用或者参数不是字符串时为 null
+     */
+    @Nullable
+    public static String getRequireModuleName(@NotNull LuaCallExpr callExpr) {
+        if (!callExpr.getExpr().textMatches("require"))
+            return null;
+        PsiElement string = callExpr.getFirstStringArg();
+        if (string == null)
+            return null;
+        String moduleName = LuaString.getContent(string.getText()).value;
+        if (moduleName == null || moduleName.isEmpty())
+            return null;
+        return moduleName.replace('/', '.');
+    }
+
+    /**
+     * 表达式本身是 require 调用时的模块名，如 return require "x"、X = require "x"
+     * @param expr 表达式
+     * @return 模块名
+     */
+    @Nullable
+    public static String findRequireModuleName(@Nullable PsiElement expr) {
+        while (expr instanceof LuaValueExpr || expr instanceof LuaVar)
+            expr = expr.getFirstChild();
+        return expr instanceof LuaCallExpr ? getRequireModuleName((LuaCallExpr) expr) : null;
+    }
+
     /**
      * 找到 require 的文件路径
      * @param pathString 参数字符串 require "aa.bb.cc"
@@ -333,8 +384,7 @@ public class LuaPsiResolveUtil {
     public static LuaFile resolveRequireFile(String pathString, Project project) {
         if (pathString == null)
             return null;
-        String fileName = pathString.replace('.', '/');
-        VirtualFile f = LuaFileUtil.findFile(project, fileName);
+        VirtualFile f = LuaFileUtil.findModuleFile(project, pathString);
         if (f != null) {
             PsiFile psiFile = PsiManager.getInstance(project).findFile(f);
             if (psiFile instanceof LuaFile)
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.psi;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * 一个作用域（block 或者文件）里直接定义的 local 符号表
+ * 函数参数、for 变量算在对应的 block 里，从 block 开始处可见
+ * local 变量在 local 语句结束后可见，local function 从定义开始处可见（可以递归）
+ * 偏移都相对于作用域的起点，只有作用域自己的子树变化（重新解析）时才需要重建
+ */
+public class LuaSymbolTable {
+
+    /**
+     * 拥有符号表的作用域：LuaBlock, LuaFile
+     */
+    public interface Owner extends PsiElement {
+        @NotNull
+        LuaSymbolTable getSymbolTable();
+    }
+
+    private static class Entry<T extends PsiElement> {
+        final int offset;
+        final T element;
+
+        Entry(int offset, T element) {
+            this.offset = offset;
+            this.element = element;
+        }
+    }
+
+    // 按偏移排序
+    private final Map<String, List<Entry<LuaNameDef>>> nameDefMap = new HashMap<>();
+    private final Map<String, List<Entry<LuaLocalFuncDef>>> funcDefMap = new HashMap<>();
+    private final List<Entry<LuaNameDef>> nameDefs = new ArrayList<>();
+    private final List<Entry<LuaLocalFuncDef>> funcDefs = new ArrayList<>();
+
+    private LuaSymbolTable() {
+    }
+
+    @NotNull
+    public static LuaSymbolTable build(@NotNull Owner scope) {
+        LuaSymbolTable table = new LuaSymbolTable();
+        if (scope instanceof LuaBlock) {
+            PsiElement owner = scope.getParent();
+            if (owner instanceof LuaFuncBody) {
+                for (LuaParamNameDef paramNameDef : ((LuaFuncBody) owner).getParamNameDefList())
+                    table.addNameDef(paramNameDef, 0);
+            } else if (owner instanceof LuaForAStat) {
+                LuaParamNameDef paramNameDef = ((LuaForAStat) owner).getParamNameDef();
+                if (paramNameDef != null)
+                    table.addNameDef(paramNameDef, 0);
+            } else if (owner instanceof LuaForBStat) {
+                for (LuaParamNameDef paramNameDef : ((LuaForBStat) owner).getParamNameDefList())
+                    table.addNameDef(paramNameDef, 0);
+            }
+        }
+
+        int base = scope.getNode().getStartOffset();
+        for (PsiElement child = scope.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof LuaLocalDef) {
+                LuaNameList nameList = ((LuaLocalDef) child).getNameList();
+                if (nameList != null) {
+                    // local name = name 右边的 name 不是这里定义的
+                    int offset = child.getNode().getStartOffset() + child.getTextLength() - base;
+                    for (LuaNameDef nameDef : nameList.getNameDefList())
+                        table.addNameDef(nameDef, offset);
+                }
+            } else if (child instanceof LuaLocalFuncDef) {
+                LuaLocalFuncDef funcDef = (LuaLocalFuncDef) child;
+                String name = funcDef.getName();
+                if (name != null) {
+                    Entry<LuaLocalFuncDef> entry = new Entry<>(child.getNode().getStartOffset() - base, funcDef);
+                    table.funcDefs.add(entry);
+                    table.funcDefMap.computeIfAbsent(name, k -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+        return table;
+    }
+
+    private void addNameDef(LuaNameDef nameDef, int offset) {
+        Entry<LuaNameDef> entry = new Entry<>(offset, nameDef);
+        nameDefs.add(entry);
+        nameDefMap.computeIfAbsent(nameDef.getName(), k -> new ArrayList<>()).add(entry);
+    }
+
+    /**
+     * 向外层作用域逐级查找在 element 处可见的 local 变量（包括参数、for 变量）
+     */
+    @Nullable
+    public static LuaNameDef findLocalNameDef(@NotNull PsiElement element, @NotNull String name) {
+        int offset = element.getNode().getStartOffset();
+        for (Owner scope = getScope(element); scope != null; scope = getScope(scope)) {
+            List<Entry<LuaNameDef>> list = scope.getSymbolTable().nameDefMap.get(name);
+            int index = lastVisible(list, offset - scope.getNode().getStartOffset());
+            if (index >= 0)
+                return list.get(index).element;
+        }
+        return null;
+    }
+
+    /**
+     * 向外层作用域逐级查找在 element 处可见的 local function
+     */
+    @Nullable
+    public static LuaLocalFuncDef findLocalFuncDef(@NotNull PsiElement element, @NotNull String name) {
+        int offset = element.getNode().getStartOffset();
+        for (Owner scope = getScope(element); scope != null; scope = getScope(scope)) {
+            List<Entry<LuaLocalFuncDef>> list = scope.getSymbolTable().funcDefMap.get(name);
+            int index = lastVisible(list, offset - scope.getNode().getStartOffset());
+            if (index >= 0)
+                return list.get(index).element;
+        }
+        return null;
+    }
+
+    /**
+     * 在 element 处可见的所有 local 变量，由近到远（包括被覆盖的同名变量）
+     */
+    public static void processLocalNameDefs(@NotNull PsiElement element, @NotNull LuaPsiTreeUtil.ElementProcessor<LuaNameDef> processor) {
+        int offset = element.getNode().getStartOffset();
+        for (Owner scope = getScope(element); scope != null; scope = getScope(scope)) {
+            if (!process(scope.getSymbolTable().nameDefs, offset - scope.getNode().getStartOffset(), processor))
+                return;
+        }
+    }
+
+    /**
+     * 在 element 处可见的所有 local function，由近到远
+     */
+    public static void processLocalFuncDefs(@NotNull PsiElement element, @NotNull LuaPsiTreeUtil.ElementProcessor<LuaLocalFuncDef> processor) {
+        int offset = element.getNode().getStartOffset();
+        for (Owner scope = getScope(element); scope != null; scope = getScope(scope)) {
+            if (!process(scope.getSymbolTable().funcDefs, offset - scope.getNode().getStartOffset(), processor))
+                return;
+        }
+    }
+
+    @Nullable
+    private static Owner getScope(@NotNull PsiElement element) {
+        return PsiTreeUtil.getParentOfType(element, Owner.class);
+    }
+
+    /**
+     * 二分查找最后一个可见的定义，同一个 local 语句中的同名变量取第一个
+     * @return 下标，没有时为 -1
+     */
+    private static <T extends PsiElement> int lastVisible(@Nullable List<Entry<T>> list, int offset) {
+        if (list == null)
+            return -1;
+        int low = 0;
+        int high = list.size() - 1;
+        int index = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid).offset <= offset) {
+                index = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        while (index > 0 && list.get(index - 1).offset == list.get(index).offset)
+            index--;
+        return index;
+    }
+
+    private static <T extends PsiElement> boolean process(List<Entry<T>> list, int offset, LuaPsiTreeUtil.ElementProcessor<T> processor) {
+        int end = lastVisible(list, offset);
+        if (end < 0)
+            return true;
+        // lastVisible 返回的是同偏移的第一个，找到这一组的最后一个
+        while (end + 1 < list.size() && list.get(end + 1).offset == list.get(end).offset)
+            end++;
+        int i = end;
+        while (i >= 0) {
+            int start = i;
+            while (start > 0 && list.get(start - 1).offset == list.get(i).offset)
+                start--;
+            for (int j = start; j <= i; j++) {
+                if (!processor.accept(list.get(j).element))
+                    return false;
+            }
+            i = start - 1;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.psi.impl;
+
+import com.intellij.extapi.psi.ASTWrapperPsiElement;
+import com.intellij.lang.ASTNode;
+import com.tang.intellij.lua.psi.LuaSymbolTable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * block 持有自己的 local 符号表，子树变化时丢弃
+ */
+public class LuaBlockScopeImpl extends ASTWrapperPsiElement implements LuaSymbolTable.Owner {
+
+    private volatile LuaSymbolTable symbolTable;
+
+    LuaBlockScopeImpl(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    @NotNull
+    @Override
+    public LuaSymbolTable getSymbolTable() {
+        LuaSymbolTable table = symbolTable;
+        if (table == null) {
+            table = LuaSymbolTable.build(this);
+            symbolTable = table;
+        }
+        return table;
+    }
+
+    @Override
+    public void subtreeChanged() {
+        super.subtreeChanged();
+        symbolTable = null;
+    }
+}
@@ -37,6 +37,10 @@ public class LuaExpressionImpl extends LuaPsiElementImpl implements LuaExpressio
 
     @Override
     public LuaTypeSet guessType(SearchContext context) {
+        return context.guessType(this, () -> guessTypeOriginal(context));
+    }
+
+    private LuaTypeSet guessTypeOriginal(SearchContext context) {
         LuaTypeSet set = null;
         if (context.push(this, SearchContext.Overflow.GuessType)) {
             if (this instanceof LuaValueExpr)
@@ -75,16 +79,12 @@ public class LuaExpressionImpl extends LuaPsiElementImpl implements LuaExpressio
         // xxx()
         LuaExpr ref = luaCallExpr.getExpr();
         // 从 require 'xxx' 中获取返回类型
-        if (ref.textMatches("require")) {
-            String filePath = null;
-            PsiElement string = luaCallExpr.getFirstStringArg();
-            if (string != null) {
-                filePath = string.getText();
-                filePath = filePath.substring(1, filePath.length() - 1);
-            }
-            LuaFile file = null;
-            if (filePath != null)
-                file = LuaPsiResolveUtil.resolveRequireFile(filePath, luaCallExpr.getProject());
+        String moduleName = LuaPsiResolveUtil.getRequireModuleName(luaCallExpr);
+        if (moduleName != null) {
+            // 建 stub 时不能跨文件查找，由 stub 记录 require 的模块名
+            if (context.getCurrentStubFile() != null)
+                return null;
+            LuaFile file = LuaPsiResolveUtil.resolveRequireFile(moduleName, luaCallExpr.getProject());
             if (file != null)
                 return file.getReturnedType(context);
         }
@@ -19,8 +19,6 @@ package com.tang.intellij.lua.psi.impl;
 import com.intellij.extapi.psi.StubBasedPsiElementBase;
 import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiReference;
-import com.intellij.psi.PsiReferenceService;
-import com.intellij.psi.impl.source.resolve.reference.ReferenceProvidersRegistry;
 import com.intellij.psi.stubs.IStubElementType;
 import com.intellij.psi.tree.IElementType;
 import com.tang.intellij.lua.lang.type.LuaType;
@@ -28,6 +26,7 @@ import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaClassField;
 import com.tang.intellij.lua.psi.LuaExpression;
 import com.tang.intellij.lua.psi.LuaIndexExpr;
+import com.tang.intellij.lua.psi.LuaPsiImplUtil;
 import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.LuaIndexStub;
 import com.tang.intellij.lua.stubs.index.LuaClassFieldIndex;
@@ -58,7 +57,7 @@ public class LuaIndexExpressionImpl extends StubBasedPsiElementBase<LuaIndexStub
     @NotNull
     @Override
     public PsiReference[] getReferences() {
-        return ReferenceProvidersRegistry.getReferencesFromProviders(this, PsiReferenceService.Hints.NO_HINTS);
+        return LuaPsiImplUtil.getReferences(this);
     }
 
     @Override
@@ -72,6 +71,10 @@ public class LuaIndexExpressionImpl extends StubBasedPsiElementBase<LuaIndexStub
 
     @Override
     public LuaTypeSet guessType(SearchContext context) {
+        return context.guessType(this, () -> guessTypeOriginal(context));
+    }
+
+    private LuaTypeSet guessTypeOriginal(SearchContext context) {
         LuaTypeSet result = LuaTypeSet.create();
         if (context.push(this, SearchContext.Overflow.GuessType)) {
             LuaIndexExpr indexExpr = (LuaIndexExpr) this;
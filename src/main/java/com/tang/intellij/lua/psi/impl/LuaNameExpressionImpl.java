@@ -22,8 +22,6 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiReference;
 import com.intellij.psi.stubs.IStubElementType;
 import com.intellij.psi.tree.IElementType;
-import com.intellij.psi.util.PsiTreeUtil;
-import com.tang.intellij.lua.comment.psi.api.LuaComment;
 import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.*;
@@ -60,13 +58,17 @@ public class LuaNameExpressionImpl extends StubBasedPsiElementBase<LuaNameStub>
 
     @Override
     public LuaTypeSet guessType(SearchContext context) {
+        return context.guessType(this, () -> guessTypeOriginal(context));
+    }
+
+    private LuaTypeSet guessTypeOriginal(SearchContext context) {
         LuaTypeSet typeSet = LuaTypeSet.create();
         if (context.push(this, SearchContext.Overflow.GuessType)) {
             LuaNameExpr nameExpr = (LuaNameExpr) this;
 
             PsiElement[] multiResolve = LuaPsiResolveUtil.multiResolve(nameExpr, context);
             if (multiResolve.length == 0) {
-                typeSet.addType(LuaType.createGlobalType(nameExpr));
+                typeSet = LuaTypeSet.create(LuaType.createGlobalType(nameExpr));
             } else {
                 for (PsiElement def : multiResolve) {
                     LuaTypeSet set = getTypeSet(context, def);
@@ -81,27 +83,19 @@ public class LuaNameExpressionImpl extends StubBasedPsiElementBase<LuaNameStub>
     @Nullable
     private LuaTypeSet getTypeSet(SearchContext context, @NotNull PsiElement def) {
         if (def instanceof LuaNameExpr) {
-            LuaTypeSet typeSet = null;
-            LuaAssignStat luaAssignStat = PsiTreeUtil.getParentOfType(def, LuaAssignStat.class);
-            if (luaAssignStat != null) {
-                LuaComment comment = luaAssignStat.getComment();
-                //优先从 Comment 猜
-                if (comment != null) {
-                    typeSet = comment.guessType(context);
-                }
-                //再从赋值猜
-                if (typeSet == null) {
-                    LuaExprList exprList = luaAssignStat.getExprList();
-                    if (exprList != null)
-                        typeSet = exprList.guessTypeAt(0, context);//TODO : multi
-                }
-            }
+            LuaNameExpr nameExpr = (LuaNameExpr) def;
+            LuaNameStub stub = nameExpr.getStub();
+            // stub 中有类型摘要时不加载 AST，没有摘要（如跨文件的构造调用）时按 AST 推断
+            if (stub != null && (stub.getValueType() != null || stub.getRequiredModule() != null))
+                return getTypeSet(context, nameExpr, stub);
+
+            LuaTypeSet typeSet = LuaPsiImplUtil.guessAssignedType(nameExpr, context);
             //Global
-            LuaNameExpr newRef = (LuaNameExpr) def;
-            if (LuaPsiResolveUtil.resolveLocal(newRef, context) == null) {
-                if (typeSet == null)
-                    typeSet = LuaTypeSet.create();
-                typeSet.addType(LuaType.createGlobalType(newRef));
+            boolean global = stub != null ? stub.isGlobal() : LuaPsiResolveUtil.resolveLocal(nameExpr, context) == null;
+            if (global) {
+                // 推断结果可能来自 context 缓存，不能直接修改
+                LuaTypeSet globalSet = LuaTypeSet.create(LuaType.createGlobalType(nameExpr));
+                typeSet = typeSet == null ? globalSet : typeSet.union(globalSet);
             }
             return typeSet;
         } else if (def instanceof LuaTypeGuessable) {
@@ -111,6 +105,28 @@ public class LuaNameExpressionImpl extends StubBasedPsiElementBase<LuaNameStub>
         return null;
     }
 
+    /**
+     * 只用 stub 中的信息，不加载定义所在文件的 AST
+     */
+    @Nullable
+    private static LuaTypeSet getTypeSet(SearchContext context, @NotNull LuaNameExpr def, @NotNull LuaNameStub stub) {
+        LuaTypeSet typeSet = stub.getValueType();
+        String module = stub.getRequiredModule();
+        if (module != null && context.getCurrentStubFile() == null) {
+            LuaFile file = LuaPsiResolveUtil.resolveRequireFile(module, def.getProject());
+            if (file != null) {
+                LuaTypeSet moduleType = file.getReturnedType(context);
+                if (moduleType != null)
+                    typeSet = typeSet == null ? moduleType : typeSet.union(moduleType);
+            }
+        }
+        if (stub.isGlobal()) {
+            LuaTypeSet globalSet = LuaTypeSet.create(LuaType.createGlobalType(def));
+            typeSet = typeSet == null ? globalSet : typeSet.union(globalSet);
+        }
+        return typeSet;
+    }
+
     @Nullable
     @Override
     public LuaNameExpr getNameRef() {
@@ -19,9 +19,8 @@ package com.tang.intellij.lua.psi.impl;
 import com.intellij.extapi.psi.ASTWrapperPsiElement;
 import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiReference;
-import com.intellij.psi.PsiReferenceService;
-import com.intellij.psi.impl.source.resolve.reference.ReferenceProvidersRegistry;
 import com.tang.intellij.lua.psi.LuaPsiElement;
+import com.tang.intellij.lua.psi.LuaPsiImplUtil;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -36,7 +35,7 @@ public class LuaPsiElementImpl extends ASTWrapperPsiElement implements LuaPsiEle
     @NotNull
     @Override
     public PsiReference[] getReferences() {
-        return ReferenceProvidersRegistry.getReferencesFromProviders(this, PsiReferenceService.Hints.NO_HINTS);
+        return LuaPsiImplUtil.getReferences(this);
     }
 
     @Override
@@ -16,29 +16,40 @@
 
 package com.tang.intellij.lua.psi.search;
 
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.util.Ref;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.util.Processor;
 import com.intellij.util.QueryExecutor;
 import com.tang.intellij.lua.comment.psi.LuaDocClassDef;
-import com.tang.intellij.lua.stubs.index.LuaSuperClassIndex;
+import com.tang.intellij.lua.search.LuaClassHierarchy;
+import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
-
 /**
  * LuaClassInheritorsSearchExecutor
+ * 子类来自 LuaClassHierarchy 缓存的传递闭包（广度优先，已处理循环继承），类定义变化时才重新计算
  * Created by tangzx on 2017/3/28.
  */
 public class LuaClassInheritorsSearchExecutor implements QueryExecutor<LuaDocClassDef, LuaClassInheritorsSearch.SearchParameters> {
 
-    private boolean processInheritors(LuaClassInheritorsSearch.SearchParameters searchParameters, String typeName, Processor<LuaDocClassDef> processor) {
-        Collection<LuaDocClassDef> classDefs = LuaSuperClassIndex.getInstance().get(typeName, searchParameters.getProject(), searchParameters.getSearchScope());
-        for (LuaDocClassDef classDef : classDefs) {
+    private boolean processInheritors(LuaClassInheritorsSearch.SearchParameters searchParameters, Processor<LuaDocClassDef> processor) {
+        String typeName = searchParameters.getTypeName();
+        SearchContext context = new SearchContext(searchParameters.getProject());
+        GlobalSearchScope scope = searchParameters.getSearchScope();
+        for (LuaClassHierarchy.ClassNode node : LuaClassHierarchy.getInstance(searchParameters.getProject()).getInheritors(typeName, context)) {
+            ProgressManager.checkCanceled();
+            // 非 deep 时只要直接子类
+            if (!searchParameters.isDeep() && !typeName.equals(node.getSuperClassName()))
+                continue;
+            LuaDocClassDef classDef = node.getDefinition();
+            VirtualFile file = classDef.getContainingFile().getVirtualFile();
+            if (file != null && !scope.contains(file))
+                continue;
             if (!processor.process(classDef))
                 return false;
-            if (searchParameters.isDeep() && !processInheritors(searchParameters, classDef.getName(), processor))
-                return false;
         }
         return true;
     }
@@ -47,7 +58,7 @@ public class LuaClassInheritorsSearchExecutor implements QueryExecutor<LuaDocCla
     public boolean execute(@NotNull LuaClassInheritorsSearch.SearchParameters searchParameters, @NotNull Processor<LuaDocClassDef> processor) {
         final Ref<Boolean> ref = Ref.create();
         DumbService.getInstance(searchParameters.getProject()).runReadActionInSmartMode(() -> {
-            ref.set(processInheritors(searchParameters, searchParameters.getTypeName(), processor));
+            ref.set(processInheritors(searchParameters, processor));
         });
         return ref.get();
     }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.psi.search;
+
+import com.intellij.openapi.application.QueryExecutorBase;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.SearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Processor;
+import com.tang.intellij.lua.psi.LuaCallExpr;
+import com.tang.intellij.lua.psi.LuaFile;
+import com.tang.intellij.lua.psi.LuaFileUtil;
+import com.tang.intellij.lua.psi.LuaPsiResolveUtil;
+import com.tang.intellij.lua.stubs.index.LuaRequiredByIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * 查找 require 某个文件的地方
+ * 通过 LuaRequiredByIndex 只遍历 require 了这个模块的文件
+ */
+public class LuaRequireReferencesSearchExecutor extends QueryExecutorBase<PsiReference, ReferencesSearch.SearchParameters> {
+
+    public LuaRequireReferencesSearchExecutor() {
+        super(true);
+    }
+
+    @Override
+    public void processQuery(@NotNull ReferencesSearch.SearchParameters searchParameters, @NotNull Processor<PsiReference> processor) {
+        PsiElement target = searchParameters.getElementToSearch();
+        SearchScope searchScope = searchParameters.getEffectiveSearchScope();
+        if (!(target instanceof LuaFile) || !(searchScope instanceof GlobalSearchScope))
+            return;
+        VirtualFile virtualFile = ((LuaFile) target).getVirtualFile();
+        if (virtualFile == null)
+            return;
+        Project project = target.getProject();
+        List<String> moduleNames = LuaFileUtil.getModuleNames(project, virtualFile);
+        for (String moduleName : moduleNames) {
+            for (LuaFile file : LuaRequiredByIndex.getRequiringFiles(project, moduleName, (GlobalSearchScope) searchScope)) {
+                for (LuaCallExpr callExpr : PsiTreeUtil.findChildrenOfType(file, LuaCallExpr.class)) {
+                    if (!moduleName.equals(LuaPsiResolveUtil.getRequireModuleName(callExpr)))
+                        continue;
+                    PsiReference reference = callExpr.getReference();
+                    if (reference != null && reference.isReferenceTo(target) && !processor.process(reference))
+                        return;
+                }
+            }
+        }
+    }
+}
@@ -18,20 +18,18 @@ package com.tang.intellij.lua.reference;
 
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiReferenceBase;
 import com.intellij.util.IncorrectOperationException;
 import com.tang.intellij.lua.psi.LuaElementFactory;
 import com.tang.intellij.lua.psi.LuaIndexExpr;
 import com.tang.intellij.lua.psi.LuaPsiResolveUtil;
 import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 /**
  *
  * Created by TangZX on 2016/12/4.
  */
-public class LuaIndexReference extends PsiReferenceBase<LuaIndexExpr> implements LuaReference {
+public class LuaIndexReference extends LuaPolyVariantReference<LuaIndexExpr> implements LuaReference {
 
     private PsiElement id;
 
@@ -53,27 +51,25 @@ public class LuaIndexReference extends PsiReferenceBase<LuaIndexExpr> implements
         return newId;
     }
 
+    @NotNull
     @Override
-    public boolean isReferenceTo(PsiElement element) {
-        return myElement.getManager().areElementsEquivalent(resolve(), element);
+    protected PsiElement[] resolveAll() {
+        return LuaPsiResolveUtil.multiResolve(myElement, new SearchContext(myElement.getProject()));
     }
 
-    @Nullable
     @Override
-    public PsiElement resolve() {
-        return resolve(new SearchContext(myElement.getProject()));
+    protected boolean isSelf(@NotNull PsiElement target) {
+        if (target.getContainingFile().equals(myElement.getContainingFile())) { //优化，不要去解析 Node Tree
+            return target.getNode().getTextRange().equals(myElement.getNode().getTextRange());
+        }
+        return false;
     }
 
     @Override
     public PsiElement resolve(SearchContext context) {
         PsiElement ref = LuaPsiResolveUtil.resolve(myElement, context);
-        if (ref != null) {
-            if (ref.getContainingFile().equals(myElement.getContainingFile())) { //优化，不要去解析 Node Tree
-                if (ref.getNode().getTextRange().equals(myElement.getNode().getTextRange())) {
-                    return null;//自己引用自己
-                }
-            }
-        }
+        if (ref != null && isSelf(ref))
+            return null;//自己引用自己
         return ref;
     }
 
@@ -18,20 +18,18 @@ package com.tang.intellij.lua.reference;
 
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiReferenceBase;
 import com.intellij.util.IncorrectOperationException;
 import com.tang.intellij.lua.psi.LuaElementFactory;
 import com.tang.intellij.lua.psi.LuaNameExpr;
 import com.tang.intellij.lua.psi.LuaPsiResolveUtil;
 import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 /**
  *
  * Created by tangzx on 2016/11/26.
  */
-public class LuaNameReference extends PsiReferenceBase<LuaNameExpr> implements LuaReference {
+public class LuaNameReference extends LuaPolyVariantReference<LuaNameExpr> implements LuaReference {
     private PsiElement id;
 
     LuaNameReference(LuaNameExpr element) {
@@ -52,10 +50,10 @@ public class LuaNameReference extends PsiReferenceBase<LuaNameExpr> implements L
         return newId;
     }
 
-    @Nullable
+    @NotNull
     @Override
-    public PsiElement resolve() {
-        return resolve(new SearchContext(myElement.getProject()));
+    protected PsiElement[] resolveAll() {
+        return LuaPsiResolveUtil.multiResolve(myElement, new SearchContext(myElement.getProject()));
     }
 
     @Override
@@ -66,11 +64,6 @@ public class LuaNameReference extends PsiReferenceBase<LuaNameExpr> implements L
         return resolve;
     }
 
-    @Override
-    public boolean isReferenceTo(PsiElement element) {
-        return myElement.getManager().areElementsEquivalent(element, resolve());
-    }
-
     @NotNull
     @Override
     public Object[] getVariants() {
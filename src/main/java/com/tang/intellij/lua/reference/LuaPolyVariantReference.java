@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.reference;
+
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+import com.intellij.util.SmartList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * 所有 Lua 引用的基类
+ * 解析结果保存在 ResolveCache 中，PSI 变化时由平台统一失效
+ */
+public abstract class LuaPolyVariantReference<T extends PsiElement> extends PsiReferenceBase<T> implements PsiPolyVariantReference {
+
+    private static final ResolveCache.PolyVariantResolver<LuaPolyVariantReference> RESOLVER =
+            (ref, incompleteCode) -> PsiElementResolveResult.createResults(ref.resolveAll());
+
+    LuaPolyVariantReference(@NotNull T element) {
+        super(element);
+    }
+
+    /**
+     * 真正的解析，按优先级排列，第一个为 resolve() 的结果
+     * 结果中可能包括自己（定义处），由本类过滤
+     * @return 所有可能的目标
+     */
+    @NotNull
+    protected abstract PsiElement[] resolveAll();
+
+    /**
+     * 是否指向自己，比如 Global 变量的定义处
+     */
+    protected boolean isSelf(@NotNull PsiElement target) {
+        return target == myElement;
+    }
+
+    @NotNull
+    private ResolveResult[] resolveWithCache() {
+        return ResolveCache.getInstance(myElement.getProject()).resolveWithCaching(this, RESOLVER, true, false);
+    }
+
+    @NotNull
+    @Override
+    public ResolveResult[] multiResolve(boolean incompleteCode) {
+        ResolveResult[] results = resolveWithCache();
+        List<ResolveResult> list = new SmartList<>();
+        for (ResolveResult result : results) {
+            PsiElement element = result.getElement();
+            if (element != null && !isSelf(element))
+                list.add(result);
+        }
+        return list.size() == results.length ? results : list.toArray(new ResolveResult[list.size()]);
+    }
+
+    @Nullable
+    @Override
+    public PsiElement resolve() {
+        ResolveResult[] results = resolveWithCache();
+        if (results.length == 0)
+            return null;
+        PsiElement element = results[0].getElement();
+        if (element == null || isSelf(element))
+            return null;
+        return element;
+    }
+
+    @Override
+    public boolean isReferenceTo(PsiElement element) {
+        PsiManager manager = myElement.getManager();
+        for (ResolveResult result : multiResolve(false)) {
+            if (manager.areElementsEquivalent(element, result.getElement()))
+                return true;
+        }
+        return false;
+    }
+}
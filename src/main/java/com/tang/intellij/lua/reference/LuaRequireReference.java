@@ -18,18 +18,16 @@ package com.tang.intellij.lua.reference;
 
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiReferenceBase;
 import com.tang.intellij.lua.lang.type.LuaString;
 import com.tang.intellij.lua.psi.LuaCallExpr;
 import com.tang.intellij.lua.psi.LuaPsiResolveUtil;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 /**
  *
  * Created by tangzx on 2016/12/9.
  */
-public class LuaRequireReference extends PsiReferenceBase<LuaCallExpr> {
+public class LuaRequireReference extends LuaPolyVariantReference<LuaCallExpr> {
 
     private String pathString;
     private TextRange range = TextRange.EMPTY_RANGE;
@@ -51,22 +49,18 @@ public class LuaRequireReference extends PsiReferenceBase<LuaCallExpr> {
         }
     }
 
-    @Override
-    public boolean isReferenceTo(PsiElement element) {
-        return myElement.getManager().areElementsEquivalent(element, resolve());
-    }
-
     @Override
     public TextRange getRangeInElement() {
         return range;
     }
 
-    @Nullable
+    @NotNull
     @Override
-    public PsiElement resolve() {
+    protected PsiElement[] resolveAll() {
         if (pathString == null)
-            return  null;
-        return LuaPsiResolveUtil.resolveRequireFile(pathString, myElement.getProject());
+            return PsiElement.EMPTY_ARRAY;
+        PsiElement file = LuaPsiResolveUtil.resolveRequireFile(pathString, myElement.getProject());
+        return file == null ? PsiElement.EMPTY_ARRAY : new PsiElement[] { file };
     }
 
     @NotNull
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.search;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootAdapter;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.psi.*;
+import com.intellij.psi.search.ProjectAndLibrariesScope;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.messages.MessageBusConnection;
+import com.tang.intellij.lua.comment.psi.LuaDocClassDef;
+import com.tang.intellij.lua.comment.psi.api.LuaComment;
+import com.tang.intellij.lua.lang.type.LuaType;
+import com.tang.intellij.lua.psi.LuaFile;
+import com.tang.intellij.lua.stubs.index.LuaClassIndex;
+import com.tang.intellij.lua.stubs.index.LuaSuperClassIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 项目级的类继承关系缓存
+ * 类名 -> 定义、别名、父类链、所有子类
+ * 只有在 ---@class 相关的内容变化时才失效
+ */
+public class LuaClassHierarchy {
+
+    public static LuaClassHierarchy getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, LuaClassHierarchy.class);
+    }
+
+    public static class ClassNode {
+        private final LuaClassHierarchy hierarchy;
+        private final String name;
+        private final LuaDocClassDef definition;
+        private final LuaType type;
+        private volatile List<ClassNode> superChain;
+        private volatile List<ClassNode> inheritors;
+
+        ClassNode(LuaClassHierarchy hierarchy, LuaDocClassDef definition) {
+            this.hierarchy = hierarchy;
+            this.definition = definition;
+            this.type = definition.getClassType();
+            this.name = type.getClassName();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @NotNull
+        public LuaDocClassDef getDefinition() {
+            return definition;
+        }
+
+        @NotNull
+        public LuaType getType() {
+            return type;
+        }
+
+        @Nullable
+        public String getAliasName() {
+            return type.getAliasName();
+        }
+
+        @Nullable
+        public String getSuperClassName() {
+            return type.getSuperClassName();
+        }
+
+        /**
+         * 所有父类，由近到远，不包括自己
+         * 遇到循环继承时在回到已访问的类之前停止
+         */
+        @NotNull
+        public List<ClassNode> getSuperChain() {
+            List<ClassNode> chain = superChain;
+            if (chain == null) {
+                chain = new ArrayList<>();
+                Set<String> visited = new HashSet<>();
+                visited.add(name);
+                ClassNode node = this;
+                while (node.getSuperClassName() != null && visited.add(node.getSuperClassName())) {
+                    node = hierarchy.findNode(node.getSuperClassName());
+                    if (node == null)
+                        break;
+                    chain.add(node);
+                }
+                chain = Collections.unmodifiableList(chain);
+                superChain = chain;
+            }
+            return chain;
+        }
+
+        /**
+         * 所有子类（包括间接子类），广度优先，不包括自己
+         */
+        @NotNull
+        public List<ClassNode> getInheritors() {
+            List<ClassNode> list = inheritors;
+            if (list == null) {
+                list = Collections.unmodifiableList(hierarchy.collectInheritors(name));
+                inheritors = list;
+            }
+            return list;
+        }
+    }
+
+    private final Project project;
+    private final SimpleModificationTracker modificationTracker = new SimpleModificationTracker();
+    private final Map<String, Optional<ClassNode>> nodes = new ConcurrentHashMap<>();
+    private volatile long nodesStamp = -1;
+    private final Map<String, LuaClassMembers> members = new ConcurrentHashMap<>();
+    private volatile long membersStamp = -1;
+    private volatile LuaClassNameTrie classNameTrie;
+    private volatile long classNameTrieStamp = -1;
+
+    public LuaClassHierarchy(Project project) {
+        this.project = project;
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new ClassDefChangeListener(), project);
+        MessageBusConnection connection = project.getMessageBus().connect(project);
+        connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+            @Override
+            public void rootsChanged(ModuleRootEvent event) {
+                modificationTracker.incModificationCount();
+            }
+        });
+        connection.subscribe(DumbService.DUMB_MODE, new DumbService.DumbModeListener() {
+            @Override
+            public void enteredDumbMode() {
+
+            }
+
+            @Override
+            public void exitDumbMode() {
+                modificationTracker.incModificationCount();
+            }
+        });
+    }
+
+    /**
+     * 类定义发生变化时递增，其它基于类继承关系的缓存可以依赖它
+     * @return ModificationTracker
+     */
+    @NotNull
+    public ModificationTracker getModificationTracker() {
+        return modificationTracker;
+    }
+
+    @Nullable
+    public ClassNode findClass(@Nullable String className, @NotNull SearchContext context) {
+        if (className == null || context.isDumb())
+            return null;
+        return findNode(className);
+    }
+
+    @Nullable
+    public LuaDocClassDef findClassDef(@Nullable String className, @NotNull SearchContext context) {
+        ClassNode node = findClass(className, context);
+        return node == null ? null : node.getDefinition();
+    }
+
+    @NotNull
+    public List<ClassNode> getSuperChain(@Nullable String className, @NotNull SearchContext context) {
+        ClassNode node = findClass(className, context);
+        return node == null ? Collections.emptyList() : node.getSuperChain();
+    }
+
+    @NotNull
+    public List<ClassNode> getInheritors(@Nullable String className, @NotNull SearchContext context) {
+        ClassNode node = findClass(className, context);
+        return node == null ? Collections.emptyList() : node.getInheritors();
+    }
+
+    /**
+     * 展开后的成员表，成员定义在任何地方变化都会失效
+     * @param type 类型，没有 ---@class 定义的类型（global, anonymous）也有成员
+     * @param context SearchContext
+     * @return LuaClassMembers, dumb 模式下为 null
+     */
+    @Nullable
+    public LuaClassMembers getMembers(@NotNull LuaType type, @NotNull SearchContext context) {
+        String className = type.getClassName();
+        if (className == null || context.isDumb())
+            return null;
+        long stamp = modificationTracker.getModificationCount() + PsiModificationTracker.SERVICE.getInstance(project).getOutOfCodeBlockModificationCount();
+        if (stamp != membersStamp) {
+            members.clear();
+            membersStamp = stamp;
+        }
+        LuaClassMembers classMembers = members.get(className);
+        if (classMembers == null) {
+            List<LuaType> types = new ArrayList<>();
+            ClassNode node = findNode(className);
+            if (node != null) {
+                types.add(node.getType());
+                for (ClassNode superNode : node.getSuperChain()) {
+                    types.add(superNode.getType());
+                }
+            } else {
+                types.add(type);
+            }
+            classMembers = LuaClassMembers.build(project, types);
+            members.put(className, classMembers);
+        }
+        return classMembers;
+    }
+
+    /**
+     * 按驼峰前缀列出可能匹配 pattern 的类名，和 LuaClassIndex 同步
+     * @param pattern 模式
+     * @param context SearchContext
+     * @param processor 返回 false 时停止
+     */
+    public void processClassNames(@NotNull String pattern, @NotNull SearchContext context, @NotNull Processor<String> processor) {
+        if (context.isDumb())
+            return;
+        long stamp = modificationTracker.getModificationCount();
+        LuaClassNameTrie trie = classNameTrie;
+        if (trie == null || stamp != classNameTrieStamp) {
+            LuaClassNameTrie newTrie = new LuaClassNameTrie();
+            LuaClassIndex.getInstance().processAllKeys(project, name -> {
+                newTrie.add(name);
+                return true;
+            });
+            trie = newTrie;
+            classNameTrie = trie;
+            classNameTrieStamp = stamp;
+        }
+        trie.process(pattern, processor);
+    }
+
+    @Nullable
+    private ClassNode findNode(@NotNull String className) {
+        checkStamp();
+        Optional<ClassNode> optional = nodes.get(className);
+        if (optional != null) {
+            ClassNode node = optional.orElse(null);
+            if (node == null || node.definition.isValid())
+                return node;
+            modificationTracker.incModificationCount();
+            checkStamp();
+        }
+        Collection<LuaDocClassDef> defs = LuaClassIndex.getInstance().get(className, project, new ProjectAndLibrariesScope(project));
+        ClassNode node = defs.isEmpty() ? null : new ClassNode(this, defs.iterator().next());
+        nodes.put(className, Optional.ofNullable(node));
+        return node;
+    }
+
+    @NotNull
+    private List<ClassNode> collectInheritors(@NotNull String className) {
+        List<ClassNode> list = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(className);
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(className);
+        ProjectAndLibrariesScope scope = new ProjectAndLibrariesScope(project);
+        while (!queue.isEmpty()) {
+            String superName = queue.poll();
+            Collection<LuaDocClassDef> defs = LuaSuperClassIndex.getInstance().get(superName, project, scope);
+            for (LuaDocClassDef def : defs) {
+                String name = def.getName();
+                if (name != null && visited.add(name)) {
+                    ClassNode node = findNode(name);
+                    if (node != null)
+                        list.add(node);
+                    queue.add(name);
+                }
+            }
+        }
+        return list;
+    }
+
+    private void checkStamp() {
+        long stamp = modificationTracker.getModificationCount();
+        if (stamp != nodesStamp) {
+            nodes.clear();
+            nodesStamp = stamp;
+        }
+    }
+
+    /**
+     * 只关心注释内部、包含 ---@class 的子树以及文件级的变化
+     */
+    private class ClassDefChangeListener extends PsiTreeChangeAdapter {
+        @Override
+        public void childAdded(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), event.getChild());
+        }
+
+        @Override
+        public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), event.getOldChild());
+            onChange(event.getParent(), event.getNewChild());
+        }
+
+        @Override
+        public void childMoved(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getOldParent(), event.getChild());
+        }
+
+        @Override
+        public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+            onChange(event.getParent(), null);
+        }
+
+        @Override
+        public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+            modificationTracker.incModificationCount();
+        }
+
+        private void onChange(@Nullable PsiElement parent, @Nullable PsiElement child) {
+            if (parent == null || parent instanceof PsiDirectory || child instanceof PsiFile) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            PsiFile file = parent.getContainingFile();
+            if (!(file instanceof LuaFile))
+                return;
+            if (parent instanceof PsiFile && child == null) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            if (PsiTreeUtil.getParentOfType(parent, LuaComment.class, false) != null) {
+                modificationTracker.incModificationCount();
+                return;
+            }
+            if (child instanceof LuaDocClassDef || child instanceof LuaComment
+                    || (child != null && PsiTreeUtil.findChildOfType(child, LuaDocClassDef.class) != null)) {
+                modificationTracker.incModificationCount();
+            }
+        }
+    }
+}
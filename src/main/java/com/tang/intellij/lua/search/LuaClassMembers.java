@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.search;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.ProjectAndLibrariesScope;
+import com.tang.intellij.lua.comment.psi.LuaDocFieldDef;
+import com.tang.intellij.lua.lang.type.LuaType;
+import com.tang.intellij.lua.psi.LuaClassField;
+import com.tang.intellij.lua.psi.LuaClassMember;
+import com.tang.intellij.lua.psi.LuaClassMethodDef;
+import com.tang.intellij.lua.stubs.index.LuaClassFieldIndex;
+import com.tang.intellij.lua.stubs.index.LuaClassMethodIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * 一个类展开后的成员表，包括父类和别名上的成员
+ * 子类的成员覆盖父类的同名成员
+ * 由 LuaClassHierarchy 创建和缓存
+ */
+public class LuaClassMembers {
+
+    public static class Member<T extends LuaClassMember> {
+        private final LuaType ownerType;
+        private final T element;
+        private final int depth;
+
+        Member(LuaType ownerType, T element, int depth) {
+            this.ownerType = ownerType;
+            this.element = element;
+            this.depth = depth;
+        }
+
+        /**
+         * 定义这个成员的类（自己或者某个父类）
+         */
+        public LuaType getOwnerType() {
+            return ownerType;
+        }
+
+        public T getElement() {
+            return element;
+        }
+
+        /**
+         * 0 表示自己，1 表示直接父类，依此类推
+         */
+        public int getDepth() {
+            return depth;
+        }
+    }
+
+    private final Map<String, Member<LuaClassField>> fields = new LinkedHashMap<>();
+    private final Map<String, Member<LuaClassMethodDef>> methods = new LinkedHashMap<>();
+    private final Map<String, Member<LuaClassMethodDef>> staticMethods = new LinkedHashMap<>();
+
+    private LuaClassMembers() {
+    }
+
+    /**
+     * @param types 自己以及所有父类，由近到远
+     */
+    static LuaClassMembers build(@NotNull Project project, @NotNull List<LuaType> types) {
+        LuaClassMembers members = new LuaClassMembers();
+        ProjectAndLibrariesScope scope = new ProjectAndLibrariesScope(project);
+        for (int depth = 0; depth < types.size(); depth++) {
+            LuaType type = types.get(depth);
+            Map<String, Member<LuaClassField>> levelFields = new HashMap<>();
+            Map<String, Member<LuaClassMethodDef>> levelMethods = new HashMap<>();
+            Map<String, Member<LuaClassMethodDef>> levelStaticMethods = new HashMap<>();
+            for (String name : getNames(type)) {
+                for (LuaClassField field : LuaClassFieldIndex.getInstance().get(name, project, scope)) {
+                    String fieldName = field.getFieldName();
+                    if (fieldName == null)
+                        continue;
+                    Member<LuaClassField> exist = levelFields.get(fieldName);
+                    // 同一个类中 ---@field 优先
+                    if (exist == null || (!(exist.element instanceof LuaDocFieldDef) && field instanceof LuaDocFieldDef))
+                        levelFields.put(fieldName, new Member<>(type, field, depth));
+                }
+                for (LuaClassMethodDef def : LuaClassMethodIndex.getInstance().get(name, project, scope)) {
+                    String methodName = def.getName();
+                    if (methodName != null)
+                        levelMethods.putIfAbsent(methodName, new Member<>(type, def, depth));
+                }
+                for (LuaClassMethodDef def : LuaClassMethodIndex.getInstance().get(name + ".static", project, scope)) {
+                    String methodName = def.getName();
+                    if (methodName != null)
+                        levelStaticMethods.putIfAbsent(methodName, new Member<>(type, def, depth));
+                }
+            }
+            levelFields.forEach(members.fields::putIfAbsent);
+            levelMethods.forEach(members.methods::putIfAbsent);
+            levelStaticMethods.forEach(members.staticMethods::putIfAbsent);
+        }
+        return members;
+    }
+
+    private static List<String> getNames(LuaType type) {
+        String aliasName = type.getAliasName();
+        if (aliasName == null || aliasName.equals(type.getClassName()))
+            return Collections.singletonList(type.getClassName());
+        return Arrays.asList(type.getClassName(), aliasName);
+    }
+
+    @Nullable
+    public Member<LuaClassField> findField(String name) {
+        return fields.get(name);
+    }
+
+    @Nullable
+    public Member<LuaClassMethodDef> findMethod(String name) {
+        return methods.get(name);
+    }
+
+    @Nullable
+    public Member<LuaClassMethodDef> findStaticMethod(String name) {
+        return staticMethods.get(name);
+    }
+
+    /**
+     * 实例方法或静态方法，离自己近的优先，同一层实例方法优先
+     */
+    @Nullable
+    public Member<LuaClassMethodDef> findAnyMethod(String name) {
+        Member<LuaClassMethodDef> method = methods.get(name);
+        Member<LuaClassMethodDef> staticMethod = staticMethods.get(name);
+        if (method == null)
+            return staticMethod;
+        if (staticMethod == null || method.depth <= staticMethod.depth)
+            return method;
+        return staticMethod;
+    }
+
+    @NotNull
+    public Collection<Member<LuaClassField>> getFields() {
+        return Collections.unmodifiableCollection(fields.values());
+    }
+
+    @NotNull
+    public Collection<Member<LuaClassMethodDef>> getMethods() {
+        return Collections.unmodifiableCollection(methods.values());
+    }
+
+    @NotNull
+    public Collection<Member<LuaClassMethodDef>> getStaticMethods() {
+        return Collections.unmodifiableCollection(staticMethods.values());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.search;
+
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * 按单词首字母（驼峰）组织的类名前缀树
+ * PlayerController -> p, c
+ * 查询时模式的首字母必须对应类名的第一个单词，之后的大写字母依次对应后面的单词（可以跳过单词）
+ * 只用来缩小候选范围，结果还需要用 CamelHumpMatcher 确认
+ */
+public class LuaClassNameTrie {
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private List<String> names;
+    }
+
+    private final Node root = new Node();
+    private int size;
+
+    public void add(@NotNull String className) {
+        Node node = root;
+        for (char c : wordInitials(className)) {
+            node = node.children.computeIfAbsent(c, k -> new Node());
+        }
+        if (node.names == null)
+            node.names = new ArrayList<>(1);
+        node.names.add(className);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 列出可能匹配 pattern 的类名
+     * @param pattern 变量名之类的模式，如 playerCtrl
+     * @param processor 返回 false 时停止
+     */
+    public void process(@NotNull String pattern, @NotNull Processor<String> processor) {
+        char[] initials = humpInitials(pattern);
+        if (initials.length == 0)
+            return;
+        Node first = root.children.get(initials[0]);
+        if (first != null)
+            process(first, initials, 1, new HashSet<>(), processor);
+    }
+
+    private static boolean process(Node node, char[] initials, int index, Set<String> visited, Processor<String> processor) {
+        if (index == initials.length)
+            return processAll(node, visited, processor);
+        for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+            Node child = entry.getValue();
+            // 匹配下一个单词，或者跳过这个单词
+            if (entry.getKey() == initials[index] && !process(child, initials, index + 1, visited, processor))
+                return false;
+            if (!process(child, initials, index, visited, processor))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean processAll(Node node, Set<String> visited, Processor<String> processor) {
+        if (node.names != null) {
+            for (String name : node.names) {
+                if (visited.add(name) && !processor.process(name))
+                    return false;
+            }
+        }
+        for (Node child : node.children.values()) {
+            if (!processAll(child, visited, processor))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 类名中每个单词的首字母，小写
+     * 开头、每个大写字母、分隔符（. _ 等）后的字母都算单词开始
+     */
+    static char[] wordInitials(@NotNull String name) {
+        StringBuilder sb = new StringBuilder();
+        boolean afterSeparator = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                if (i == 0)
+                    sb.append(c);
+                afterSeparator = true;
+                continue;
+            }
+            if (afterSeparator || Character.isUpperCase(c))
+                sb.append(Character.toLowerCase(c));
+            afterSeparator = false;
+        }
+        return sb.toString().toCharArray();
+    }
+
+    /**
+     * 模式的首字母以及其中的大写字母，小写
+     */
+    static char[] humpInitials(@NotNull String pattern) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (i == 0 || Character.isUpperCase(c))
+                sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString().toCharArray();
+    }
+}
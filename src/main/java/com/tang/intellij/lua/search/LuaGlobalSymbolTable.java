@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.search;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiRecursiveElementWalkingVisitor;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.ProjectAndLibrariesScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.util.Processor;
+import com.intellij.util.containers.ContainerUtil;
+import com.tang.intellij.lua.Constants;
+import com.tang.intellij.lua.lang.LuaFileType;
+import com.tang.intellij.lua.psi.*;
+import com.tang.intellij.lua.stubs.index.LuaGlobalFuncIndex;
+import com.tang.intellij.lua.stubs.index.LuaGlobalVarIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 整个项目的全局符号表，给 Inspect Code 这类批量检查用
+ * 1. 从 LuaGlobalVarIndex, LuaGlobalFuncIndex 得到所有定义过的全局名字
+ * 2. 并行扫描项目中的每个文件，记录被读取的全局名字以及没有定义的引用
+ * 每个文件的扫描互不依赖，文件多时随 CPU 核数线性扩展
+ */
+public class LuaGlobalSymbolTable {
+
+    // 运行时提供的全局名字，std 中没有定义
+    private static final Set<String> BUILTIN_NAMES = ContainerUtil.newHashSet("_G", "_ENV", "_VERSION", "arg");
+
+    private final Project project;
+    private final Set<String> definedNames = new HashSet<>();
+    private final Set<String> usedNames = ContainerUtil.newConcurrentSet();
+    // 文件 -> 没有定义的全局名字引用的偏移
+    private final Map<VirtualFile, List<Integer>> undefinedUsages = new ConcurrentHashMap<>();
+
+    private LuaGlobalSymbolTable(@NotNull Project project) {
+        this.project = project;
+    }
+
+    /**
+     * 不要在 read action 中调用，文件扫描在其它线程中获取 read action
+     * @param project Project
+     * @param indicator 进度，可以为 null
+     * @return 扫描了项目中所有 lua 文件的符号表
+     */
+    @NotNull
+    public static LuaGlobalSymbolTable build(@NotNull Project project, @Nullable ProgressIndicator indicator) {
+        LuaGlobalSymbolTable table = new LuaGlobalSymbolTable(project);
+        List<VirtualFile> files = new ArrayList<>();
+        ApplicationManager.getApplication().runReadAction(() -> {
+            table.collectDefinedNames();
+            files.addAll(FileTypeIndex.getFiles(LuaFileType.INSTANCE, GlobalSearchScope.projectScope(project)));
+        });
+        PsiManager psiManager = PsiManager.getInstance(project);
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, indicator, true, false, file -> {
+            if (file.isValid()) {
+                PsiFile psiFile = psiManager.findFile(file);
+                if (psiFile instanceof LuaFile)
+                    table.scanFile(file, (LuaFile) psiFile);
+            }
+            return true;
+        });
+        return table;
+    }
+
+    private void collectDefinedNames() {
+        ProjectAndLibrariesScope scope = new ProjectAndLibrariesScope(project);
+        definedNames.addAll(BUILTIN_NAMES);
+        collectNames(LuaGlobalVarIndex.KEY, scope);
+        collectNames(LuaGlobalFuncIndex.KEY, scope);
+    }
+
+    private void collectNames(@NotNull StubIndexKey<String, ?> key, @NotNull GlobalSearchScope scope) {
+        StubIndex.getInstance().processAllKeys(key, name -> {
+            ProgressManager.checkCanceled();
+            definedNames.add(name);
+            return true;
+        }, scope, null);
+    }
+
+    /**
+     * 在工作线程中执行，结果先放在局部变量里再合并，减少竞争
+     */
+    private void scanFile(@NotNull VirtualFile file, @NotNull LuaFile luaFile) {
+        Set<String> used = new HashSet<>();
+        List<Integer> undefined = new ArrayList<>();
+        SearchContext context = new SearchContext(project);
+        luaFile.accept(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(PsiElement element) {
+                if (element instanceof LuaNameExpr) {
+                    visitNameExpr((LuaNameExpr) element);
+                } else {
+                    super.visitElement(element);
+                }
+            }
+
+            private void visitNameExpr(LuaNameExpr nameExpr) {
+                ProgressManager.checkCanceled();
+                String name = nameExpr.getName();
+                if (name.equals(Constants.WORD_SELF) || isGlobalAssignment(nameExpr))
+                    return;
+                if (LuaPsiResolveUtil.resolveLocal(nameExpr, context) != null)
+                    return;
+                used.add(name);
+                if (!definedNames.contains(name))
+                    undefined.add(nameExpr.getNode().getStartOffset());
+            }
+        });
+        usedNames.addAll(used);
+        if (!undefined.isEmpty())
+            undefinedUsages.put(file, undefined);
+    }
+
+    /**
+     * X = 1 左边的 X，是定义而不是读取
+     */
+    private static boolean isGlobalAssignment(@NotNull LuaNameExpr nameExpr) {
+        PsiElement parent = nameExpr.getParent();
+        return parent instanceof LuaVar && parent.getParent() instanceof LuaVarList;
+    }
+
+    public boolean isDefined(@NotNull String name) {
+        return definedNames.contains(name);
+    }
+
+    /**
+     * @param name 全局名字
+     * @return 项目中是否有地方读取了它
+     */
+    public boolean isUsed(@NotNull String name) {
+        return usedNames.contains(name);
+    }
+
+    /**
+     * @return 有没有定义的全局名字引用的文件
+     */
+    @NotNull
+    public Set<VirtualFile> getFilesWithUndefinedUsages() {
+        return Collections.unmodifiableSet(undefinedUsages.keySet());
+    }
+
+    /**
+     * @param file 文件
+     * @return 文件中没有定义的全局名字引用的偏移
+     */
+    @NotNull
+    public List<Integer> getUndefinedUsages(@NotNull VirtualFile file) {
+        List<Integer> list = undefinedUsages.get(file);
+        return list == null ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 项目中定义的全局变量和全局函数的名字
+     * 只取项目中的定义，覆盖 SDK 或库中同名函数的项目函数不算重复
+     * @param processor 名字以及项目中的所有定义
+     */
+    public void processProjectDefinitions(@NotNull DefinitionProcessor processor) {
+        GlobalSearchScope projectScope = GlobalSearchScope.projectScope(project);
+        Set<String> names = new HashSet<>();
+        Processor<String> collector = name -> {
+            names.add(name);
+            return true;
+        };
+        StubIndex.getInstance().processAllKeys(LuaGlobalVarIndex.KEY, collector, projectScope, null);
+        StubIndex.getInstance().processAllKeys(LuaGlobalFuncIndex.KEY, collector, projectScope, null);
+        for (String name : names) {
+            ProgressManager.checkCanceled();
+            Collection<LuaGlobalVar> vars = StubIndex.getElements(LuaGlobalVarIndex.KEY, name, project, projectScope, LuaGlobalVar.class);
+            Collection<LuaGlobalFuncDef> funcs = StubIndex.getElements(LuaGlobalFuncIndex.KEY, name, project, projectScope, LuaGlobalFuncDef.class);
+            if (!vars.isEmpty() || !funcs.isEmpty())
+                processor.process(name, vars, funcs);
+        }
+    }
+
+    public interface DefinitionProcessor {
+        void process(@NotNull String name, @NotNull Collection<LuaGlobalVar> vars, @NotNull Collection<LuaGlobalFuncDef> funcs);
+    }
+}
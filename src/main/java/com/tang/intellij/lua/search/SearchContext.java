@@ -22,9 +22,17 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.ProjectAndLibrariesScope;
+import com.intellij.psi.stubs.StubIndexKey;
 import com.tang.intellij.lua.lang.GuessTypeKind;
+import com.tang.intellij.lua.lang.type.LuaTypeSet;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Stack;
+import java.util.function.Supplier;
 
 /**
  *
@@ -37,12 +45,46 @@ public class SearchContext {
     private Project project;
     private int guessTypeKind = GuessTypeKind.Standard;
     private Stack<Pair> deadLockStack = new Stack<>();
+    /**
+     * 每次 push 失败（即发生递归截断）都会 +1 ，用来判断一次计算的结果是否完整
+     */
+    private int overflowCount;
+    private Map<PsiElement, LuaTypeSet> typeCache = new HashMap<>();
+    private Map<IndexQuery, Object> indexCache = new HashMap<>();
+    private int hitCount;
+    private int missCount;
 
     class Pair {
         public Overflow type;
         public PsiElement object;
     }
 
+    private static class IndexQuery {
+        final StubIndexKey key;
+        final String name;
+        final GlobalSearchScope scope;
+
+        IndexQuery(StubIndexKey key, String name, GlobalSearchScope scope) {
+            this.key = key;
+            this.name = name;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof IndexQuery) {
+                IndexQuery other = (IndexQuery) obj;
+                return key == other.key && Objects.equals(name, other.name) && Objects.equals(scope, other.scope);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return (key.hashCode() * 31 + Objects.hashCode(name)) * 31 + Objects.hashCode(scope);
+        }
+    }
+
     public SearchContext(Project project) {
         this.project = project;
     }
@@ -59,6 +101,13 @@ public class SearchContext {
         return project;
     }
 
+    /**
+     * 正在建 stub 的文件，这时只能在这个文件内推断
+     */
+    public PsiFile getCurrentStubFile() {
+        return currentStubFile;
+    }
+
     public SearchContext setCurrentStubFile(PsiFile currentStubFile) {
         this.currentStubFile = currentStubFile;
         return this;
@@ -82,10 +131,73 @@ public class SearchContext {
             pair.object = element;
             pair.type = type;
             deadLockStack.push(pair);
+        } else {
+            overflowCount++;
         }
         return v;
     }
 
+    /**
+     * 在本次 context 的生命周期内缓存 guessType 的结果
+     * 计算过程中发生过递归截断的结果是不完整的，不缓存
+     * 注意：返回的 LuaTypeSet 是共享的，调用者不要修改它
+     * @param element 要推断的元素
+     * @param compute 真正的推断
+     * @return LuaTypeSet
+     */
+    public LuaTypeSet guessType(PsiElement element, Supplier<LuaTypeSet> compute) {
+        if (typeCache.containsKey(element)) {
+            hitCount++;
+            return typeCache.get(element);
+        }
+        missCount++;
+        int overflow = overflowCount;
+        LuaTypeSet set = compute.get();
+        if (overflow == overflowCount)
+            typeCache.put(element, set);
+        return set;
+    }
+
+    /**
+     * 在本次 context 的生命周期内缓存索引的查询结果（单个元素）
+     * @param key 索引
+     * @param name 查询的名字（或组合key）
+     * @param query 真正的查询，使用 getScope()
+     * @return 查询结果，可以为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T findInIndex(StubIndexKey key, String name, Supplier<T> query) {
+        IndexQuery indexQuery = new IndexQuery(key, name, getScope());
+        if (indexCache.containsKey(indexQuery)) {
+            hitCount++;
+            return (T) indexCache.get(indexQuery);
+        }
+        missCount++;
+        T result = query.get();
+        indexCache.put(indexQuery, result);
+        return result;
+    }
+
+    /**
+     * 在本次 context 的生命周期内缓存索引的查询结果（集合）
+     * 返回的是只读视图，多个调用者共享同一个结果
+     * @param key 索引
+     * @param name 查询的名字（或组合key）
+     * @param query 真正的查询，使用 getScope()
+     * @return 只读的查询结果
+     */
+    public <T> Collection<T> findAllInIndex(StubIndexKey key, String name, Supplier<Collection<T>> query) {
+        return findInIndex(key, name, () -> Collections.unmodifiableCollection(query.get()));
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    public int getMissCount() {
+        return missCount;
+    }
+
     public void pop(PsiElement element) {
         Pair pair = deadLockStack.pop();
         assert pair.object == element;
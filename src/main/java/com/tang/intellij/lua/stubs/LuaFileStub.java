@@ -18,29 +18,37 @@ package com.tang.intellij.lua.stubs;
 
 import com.intellij.psi.stubs.PsiFileStubImpl;
 import com.intellij.psi.tree.IStubFileElementType;
+import com.intellij.util.ArrayUtil;
 import com.tang.intellij.lua.lang.LuaParserDefinition;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaFile;
-import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
- *
+ * 文件级 stub，记录模块导出的信息：
+ * 最后 return 的类型（只记录本文件内能确定的）、return require "x" 转发的模块名、require 的所有模块
+ * 跨文件的部分在查询时通过 LuaFile.getReturnedType 组合，这样推断模块类型不需要加载 AST
  * Created by tangzx on 2016/11/27.
  */
 public class LuaFileStub extends PsiFileStubImpl<LuaFile> {
     private LuaTypeSet returnedType;
-    private LuaFile file;
+    private String returnedModule;
+    private String[] requiredModules;
 
     public LuaFileStub(LuaFile file) {
         super(file);
-        this.file = file;
+        returnedModule = file.findReturnedModule();
+        if (returnedModule == null)
+            returnedType = file.guessStubReturnedType();
+        requiredModules = ArrayUtil.toStringArray(LuaFile.collectRequiredModules(file));
     }
 
-    public LuaFileStub(LuaFile file, LuaTypeSet typeSet) {
+    public LuaFileStub(LuaFile file, LuaTypeSet typeSet, String returnedModule, String[] requiredModules) {
         super(file);
-        this.file = file;
         returnedType = typeSet;
+        this.returnedModule = returnedModule;
+        this.requiredModules = requiredModules;
     }
 
     @NotNull
@@ -49,9 +57,31 @@ public class LuaFileStub extends PsiFileStubImpl<LuaFile> {
         return LuaParserDefinition.FILE;
     }
 
-    public LuaTypeSet getReturnedType(SearchContext context) {
-        if (returnedType == null && file != null)
-            returnedType = file.guessReturnedType(context);
+    /**
+     * 本文件内就能确定的返回类型，不包括 returnedModule 的类型
+     */
+    @Nullable
+    public LuaTypeSet getReturnedType() {
         return returnedType;
     }
+
+    /**
+     * 返回类型是否可以只由 stub 得到，否则需要按 AST 推断
+     */
+    public boolean hasReturnedType() {
+        return returnedType != null || returnedModule != null;
+    }
+
+    /**
+     * return require "x" 时为 x
+     */
+    @Nullable
+    public String getReturnedModule() {
+        return returnedModule;
+    }
+
+    @NotNull
+    public String[] getRequiredModules() {
+        return requiredModules;
+    }
 }
@@ -11,6 +11,7 @@ package com.tang.intellij.lua.stubs;
 import com.intellij.psi.stubs.StubElement;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaFuncBodyOwner;
+import com.tang.intellij.lua.psi.LuaFuncSignature;
 import com.tang.intellij.lua.psi.LuaParamInfo;
 
 /**
@@ -18,7 +19,15 @@ import com.tang.intellij.lua.psi.LuaParamInfo;
  * Created by TangZX on 2017/2/4.
  */
 public interface LuaFuncBodyOwnerStub<T extends LuaFuncBodyOwner> extends StubElement<T> {
+    /**
+     * @return ---@return 声明的返回类型，没有声明时为 null，由 LuaPsiImplUtil 在索引之后推断
+     */
     LuaTypeSet getReturnTypeSet();
 
     LuaParamInfo[] getParams();
+
+    /**
+     * 省略可选参数后的各种签名，第一次使用时由 params 生成并保存在 stub 中
+     */
+    LuaFuncSignature[] getSignatures();
 }
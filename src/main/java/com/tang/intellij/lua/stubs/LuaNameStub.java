@@ -17,7 +17,9 @@
 package com.tang.intellij.lua.stubs;
 
 import com.intellij.psi.stubs.StubElement;
+import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaNameExpr;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * name stub
@@ -26,4 +28,17 @@ import com.tang.intellij.lua.psi.LuaNameExpr;
 public interface LuaNameStub extends StubElement<LuaNameExpr> {
     String getName();
     boolean isGlobal();
+
+    /**
+     * 全局变量赋值时在本文件内推断的值类型（字面量、table、---@type 等）
+     * @return 不是全局变量或者推断不出时为 null
+     */
+    @Nullable
+    LuaTypeSet getValueType();
+
+    /**
+     * X = require "x" 时为 x，类型在查询时由 LuaFile.getReturnedType 得到
+     */
+    @Nullable
+    String getRequiredModule();
 }
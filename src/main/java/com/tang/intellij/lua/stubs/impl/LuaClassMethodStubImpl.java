@@ -21,6 +21,7 @@ import com.intellij.psi.stubs.StubElement;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaClassMethodDef;
 import com.tang.intellij.lua.psi.LuaElementType;
+import com.tang.intellij.lua.psi.LuaFuncSignature;
 import com.tang.intellij.lua.psi.LuaParamInfo;
 import com.tang.intellij.lua.stubs.LuaClassMethodStub;
 
@@ -33,6 +34,7 @@ public class LuaClassMethodStubImpl extends StubBase<LuaClassMethodDef> implemen
     private String shortName;
     private String className;
     private LuaParamInfo[] params;
+    private volatile LuaFuncSignature[] signatures;
     private LuaTypeSet returnTypeSet;
     private boolean isStatic;
 
@@ -69,4 +71,14 @@ public class LuaClassMethodStubImpl extends StubBase<LuaClassMethodDef> implemen
     public LuaParamInfo[] getParams() {
         return params;
     }
+
+    @Override
+    public LuaFuncSignature[] getSignatures() {
+        LuaFuncSignature[] array = signatures;
+        if (array == null) {
+            array = LuaFuncSignature.generate(params);
+            signatures = array;
+        }
+        return array;
+    }
 }
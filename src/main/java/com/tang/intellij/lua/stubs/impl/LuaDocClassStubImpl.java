@@ -32,6 +32,7 @@ public class LuaDocClassStubImpl extends StubBase<LuaDocClassDef> implements Lua
     private String className;
     private String aliasName;
     private String superClass;
+    private LuaType classType;
 
     public LuaDocClassStubImpl(String className, String aliasName, String superClass, StubElement parent) {
         super(parent, LuaElementType.CLASS_DEF);
@@ -57,8 +58,8 @@ public class LuaDocClassStubImpl extends StubBase<LuaDocClassDef> implements Lua
 
     @Override
     public LuaType getClassType() {
-        LuaType luaType = LuaType.create(className, superClass);
-        luaType.setAliasName(aliasName);
-        return luaType;
+        if (classType == null)
+            classType = LuaType.create(className, superClass, aliasName);
+        return classType;
     }
 }
@@ -20,6 +20,7 @@ import com.intellij.psi.stubs.IStubElementType;
 import com.intellij.psi.stubs.StubBase;
 import com.intellij.psi.stubs.StubElement;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
+import com.tang.intellij.lua.psi.LuaFuncSignature;
 import com.tang.intellij.lua.psi.LuaGlobalFuncDef;
 import com.tang.intellij.lua.psi.LuaParamInfo;
 import com.tang.intellij.lua.psi.LuaTypes;
@@ -33,6 +34,7 @@ public class LuaGlobalFuncStubImpl extends StubBase<LuaGlobalFuncDef> implements
 
     private String funcName;
     private LuaParamInfo[] params;
+    private volatile LuaFuncSignature[] signatures;
     private LuaTypeSet returnTypeSet;
 
     public LuaGlobalFuncStubImpl(String funcName, LuaParamInfo[] params, LuaTypeSet returnTypeSet, StubElement parent) {
@@ -56,4 +58,14 @@ public class LuaGlobalFuncStubImpl extends StubBase<LuaGlobalFuncDef> implements
     public LuaParamInfo[] getParams() {
         return params;
     }
+
+    @Override
+    public LuaFuncSignature[] getSignatures() {
+        LuaFuncSignature[] array = signatures;
+        if (array == null) {
+            array = LuaFuncSignature.generate(params);
+            signatures = array;
+        }
+        return array;
+    }
 }
\ No newline at end of file
@@ -18,36 +18,60 @@ package com.tang.intellij.lua.stubs.impl;
 
 import com.intellij.psi.stubs.StubBase;
 import com.intellij.psi.stubs.StubElement;
-import com.tang.intellij.lua.psi.LuaNameExpr;
-import com.tang.intellij.lua.psi.LuaPsiResolveUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.tang.intellij.lua.comment.psi.api.LuaComment;
+import com.tang.intellij.lua.lang.type.LuaTypeSet;
+import com.tang.intellij.lua.psi.*;
 import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.LuaNameStub;
 import com.tang.intellij.lua.stubs.types.LuaNameType;
 
 /**
- *
+ * 全局变量还记录赋值的类型摘要，查询全局变量类型时不需要加载 AST
  * Created by TangZX on 2017/4/12.
  */
 public class LuaNameStubImpl extends StubBase<LuaNameExpr> implements LuaNameStub {
 
-    private LuaNameExpr nameExpr;
     private String name;
+    private boolean global;
+    private LuaTypeSet valueType;
+    private String requiredModule;
 
     public LuaNameStubImpl(LuaNameExpr luaNameExpr, StubElement parent, LuaNameType elementType) {
         super(parent, elementType);
-        nameExpr = luaNameExpr;
         name = luaNameExpr.getName();
+        SearchContext context = new SearchContext(luaNameExpr.getProject());
+        context.setCurrentStubFile(luaNameExpr.getContainingFile());
+        global = LuaPsiResolveUtil.resolveLocal(luaNameExpr, context) == null;
+        if (global)
+            initValueType(luaNameExpr, context);
     }
 
-    public LuaNameStubImpl(String name, StubElement stubElement, LuaNameType luaNameType) {
+    public LuaNameStubImpl(String name, boolean global, LuaTypeSet valueType, String requiredModule, StubElement stubElement, LuaNameType luaNameType) {
         super(stubElement, luaNameType);
         this.name = name;
+        this.global = global;
+        this.valueType = valueType;
+        this.requiredModule = requiredModule;
     }
 
-    private boolean checkGlobal() {
-        SearchContext context = new SearchContext(nameExpr.getProject());
-        context.setCurrentStubFile(nameExpr.getContainingFile());
-        return LuaPsiResolveUtil.resolveLocal(nameExpr, context) == null;
+    /**
+     * 只记录本文件内能确定的类型：注释、字面量、table 构造，以及 require 的模块名
+     * 其它情况 valueType 为 null ，查询时按 AST 推断
+     */
+    private void initValueType(LuaNameExpr nameExpr, SearchContext context) {
+        LuaExpr value = LuaPsiImplUtil.getAssignedExpr(nameExpr);
+        LuaAssignStat assignStat = PsiTreeUtil.getParentOfType(nameExpr, LuaAssignStat.class);
+        LuaComment comment = assignStat == null ? null : assignStat.getComment();
+        String module = LuaPsiResolveUtil.findRequireModuleName(value);
+        if (module == null) {
+            valueType = LuaPsiImplUtil.guessStubType(comment, value, context);
+        } else {
+            // 注释优先，require 的模块只记录名字，类型在查询时从模块文件取
+            valueType = LuaPsiImplUtil.guessStubType(comment, null, context);
+            if (valueType == null)
+                requiredModule = module;
+        }
     }
 
     @Override
@@ -57,6 +81,16 @@ public class LuaNameStubImpl extends StubBase<LuaNameExpr> implements LuaNameStu
 
     @Override
     public boolean isGlobal() {
-        return checkGlobal();
+        return global;
+    }
+
+    @Override
+    public LuaTypeSet getValueType() {
+        return valueType;
+    }
+
+    @Override
+    public String getRequiredModule() {
+        return requiredModule;
     }
 }
@@ -18,11 +18,11 @@ package com.tang.intellij.lua.stubs.index;
 
 import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndexKey;
-import com.tang.intellij.lua.comment.psi.LuaDocClassDef;
 import com.tang.intellij.lua.comment.psi.LuaDocFieldDef;
 import com.tang.intellij.lua.lang.LuaLanguage;
 import com.tang.intellij.lua.lang.type.LuaType;
 import com.tang.intellij.lua.psi.LuaClassField;
+import com.tang.intellij.lua.search.LuaClassHierarchy;
 import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -69,23 +69,17 @@ public class LuaClassFieldIndex extends StringStubIndexExtension<LuaClassField>
             return Collections.emptyList();
 
         String key = className + "." + fieldName;
-        Collection<LuaClassField> list = INSTANCE.get(key, context.getProject(), context.getScope());
+        Collection<LuaClassField> list = context.findAllInIndex(KEY, key, () -> INSTANCE.get(key, context.getProject(), context.getScope()));
 
         if (!list.isEmpty())
             return list;
 
         // from supper
-        LuaDocClassDef classDef = LuaClassIndex.find(className, context);
-        if (classDef != null) {
-            LuaType type = classDef.getClassType();
-            if (type != null) {
-                String superClassName = type.getSuperClassName();
-                if (superClassName != null) {
-                    list = find(superClassName, fieldName, context);
-                    if (!list.isEmpty())
-                        return list;
-                }
-            }
+        for (LuaClassHierarchy.ClassNode superNode : LuaClassHierarchy.getInstance(context.getProject()).getSuperChain(className, context)) {
+            String superKey = superNode.getName() + "." + fieldName;
+            list = context.findAllInIndex(KEY, superKey, () -> INSTANCE.get(superKey, context.getProject(), context.getScope()));
+            if (!list.isEmpty())
+                return list;
         }
 
         return list;
@@ -107,9 +101,9 @@ public class LuaClassFieldIndex extends StringStubIndexExtension<LuaClassField>
     public static Collection<LuaClassField> findAll(LuaType type, String fieldName, SearchContext context) {
         Collection<LuaClassField> fields = find(type.getClassName(), fieldName, context);
         if (fields.isEmpty()) {
-            type.initAliasName(context);
-            if (type.getAliasName() != null)
-                fields = find(type.getAliasName(), fieldName, context);
+            String aliasName = type.getAliasName(context);
+            if (aliasName != null)
+                fields = find(aliasName, fieldName, context);
         }
         return fields;
     }
@@ -20,11 +20,10 @@ import com.intellij.psi.stubs.StringStubIndexExtension;
 import com.intellij.psi.stubs.StubIndexKey;
 import com.tang.intellij.lua.comment.psi.LuaDocClassDef;
 import com.tang.intellij.lua.lang.LuaLanguage;
+import com.tang.intellij.lua.search.LuaClassHierarchy;
 import com.tang.intellij.lua.search.SearchContext;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
-
 /**
  *
  * Created by tangzx on 2016/11/28.
@@ -51,8 +50,6 @@ public class LuaClassIndex extends StringStubIndexExtension<LuaDocClassDef> {
     public static LuaDocClassDef find(String name, SearchContext context) {
         if (context.isDumb())
             return null;
-        Collection<LuaDocClassDef> list = getInstance().get(name, context.getProject(), context.getScope());
-        if (!list.isEmpty()) return list.iterator().next();
-        return null;
+        return context.findInIndex(KEY, name, () -> LuaClassHierarchy.getInstance(context.getProject()).findClassDef(name, context));
     }
 }
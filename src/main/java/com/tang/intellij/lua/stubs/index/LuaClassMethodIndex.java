@@ -56,23 +56,27 @@ public class LuaClassMethodIndex extends StringStubIndexExtension<LuaClassMethod
         if (context.isDumb())
             return null;
 
-        Collection<LuaClassMethodDef> collection = INSTANCE.get(className + ".static." + methodName, context.getProject(), context.getScope());
-        if (collection.isEmpty())
-            return null;
-        else
-            return collection.iterator().next();
+        String key = className + ".static." + methodName;
+        return context.findInIndex(KEY, key, () -> {
+            Collection<LuaClassMethodDef> collection = INSTANCE.get(key, context.getProject(), context.getScope());
+            if (collection.isEmpty())
+                return null;
+            else
+                return collection.iterator().next();
+        });
     }
 
     public static LuaClassMethodDef findMethodWithName(@NotNull String className, @NotNull String methodName, @NotNull SearchContext context) {
         if (context.isDumb())
             return null;
 
-        Collection<LuaClassMethodDef> collection = INSTANCE.get(className, context.getProject(), context.getScope());
-        for (LuaClassMethodDef methodDef : collection) {
-            if (methodName.equals(methodDef.getName())) {
-                return methodDef;
-            }
-        }
-        return null;
+        String key = className + ":" + methodName;
+        return context.findInIndex(KEY, key, () -> {
+            Collection<LuaClassMethodDef> collection = INSTANCE.get(key, context.getProject(), context.getScope());
+            if (collection.isEmpty())
+                return null;
+            else
+                return collection.iterator().next();
+        });
     }
 }
@@ -26,6 +26,7 @@ import kotlin.reflect.jvm.internal.impl.utils.SmartList;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  *
@@ -59,13 +60,15 @@ public class LuaGlobalFuncIndex extends StringStubIndexExtension<LuaGlobalFuncDe
     }
 
     public static Collection<LuaGlobalFuncDef> findAll(String key, SearchContext context) {
-        Collection<LuaGlobalFuncDef> defs = new SmartList<>();
-        if (!context.isDumb()) {
+        if (context.isDumb())
+            return Collections.emptyList();
+        return context.findAllInIndex(KEY, key, () -> {
+            Collection<LuaGlobalFuncDef> defs = new SmartList<>();
             StubIndex.getInstance().processElements(KEY, key, context.getProject(), context.getScope(), LuaGlobalFuncDef.class, (s) -> {
                 defs.add(s);
                 return true;
             });
-        }
-        return defs;
+            return defs;
+        });
     }
 }
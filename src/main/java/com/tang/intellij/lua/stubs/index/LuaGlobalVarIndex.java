@@ -26,6 +26,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  *
@@ -58,13 +59,15 @@ public class LuaGlobalVarIndex extends StringStubIndexExtension<LuaGlobalVar> {
 
     @NotNull
     public static Collection<LuaGlobalVar> findAll(String key, SearchContext context) {
-        Collection<LuaGlobalVar> vars = new SmartList<>();
-        if (!context.isDumb()) {
+        if (context.isDumb())
+            return Collections.emptyList();
+        return context.findAllInIndex(KEY, key, () -> {
+            Collection<LuaGlobalVar> vars = new SmartList<>();
             StubIndex.getInstance().processElements(KEY, key, context.getProject(), context.getScope(), LuaGlobalVar.class, (s) -> {
                 vars.add(s);
                 return true;
             });
-        }
-        return vars;
+            return vars;
+        });
     }
 }
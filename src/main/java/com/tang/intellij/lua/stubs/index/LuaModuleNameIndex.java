@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.stubs.index;
+
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.ProjectScope;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import com.tang.intellij.lua.lang.LuaFileType;
+import com.tang.intellij.lua.lang.LuaLanguage;
+import com.tang.intellij.lua.project.LuaSettings;
+import com.tang.intellij.lua.psi.LuaFileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * 文件名索引，用来按 require 路径找文件
+ * a/b/c.lua 的 key 为 c 和 b/c
+ * 按路径查找时用最后两段作 key，再校验相对于源码根目录的路径
+ * 文件名 key 也用来列出所有模块名（require 路径补全）
+ */
+public class LuaModuleNameIndex extends ScalarIndexExtension<String> {
+
+    public static final ID<String, Void> NAME = ID.create("lua.index.module_name");
+
+    /**
+     * 相对路径 a/b/c.lua 对应的 key
+     */
+    @NotNull
+    public static String getKey(@NotNull String relativePath) {
+        int lastSlash = relativePath.lastIndexOf('/');
+        String name = FileUtilRt.getNameWithoutExtension(relativePath.substring(lastSlash + 1));
+        if (lastSlash > 0) {
+            int prevSlash = relativePath.lastIndexOf('/', lastSlash - 1);
+            return relativePath.substring(prevSlash + 1, lastSlash) + "/" + name;
+        }
+        return name;
+    }
+
+    /**
+     * 和 getInputFilter 一致，其它扩展名的文件不在索引中，需要按根目录查找
+     * @param fileName 文件名
+     * @return 是否会被索引
+     */
+    public static boolean isIndexed(@NotNull String fileName) {
+        return FileTypeManager.getInstance().getFileTypeByFileName(fileName) == LuaFileType.INSTANCE
+                || "txt".equalsIgnoreCase(FileUtilRt.getExtension(fileName));
+    }
+
+    /**
+     * 项目中所有可以 require 的 lua 文件的模块名，按 LuaSettings 中的路径模板计算，已排序
+     * 文件增删改名、源码根目录、路径模板变化时重新计算
+     * @param project Project
+     * @return a.b.c, dumb 模式下为空
+     */
+    @NotNull
+    public static String[] getAllModuleNames(@NotNull Project project) {
+        if (DumbService.isDumb(project))
+            return ArrayUtil.EMPTY_STRING_ARRAY;
+        ModificationTracker templatesTracker = () -> Arrays.hashCode(LuaSettings.getInstance().getRequirePathTemplates());
+        return CachedValuesManager.getManager(project).getCachedValue(project, () -> CachedValueProvider.Result.create(
+                collectModuleNames(project),
+                VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS,
+                ProjectRootManager.getInstance(project),
+                templatesTracker));
+    }
+
+    @NotNull
+    private static String[] collectModuleNames(@NotNull Project project) {
+        FileBasedIndex index = FileBasedIndex.getInstance();
+        GlobalSearchScope scope = ProjectScope.getAllScope(project);
+        List<String> fileNames = new ArrayList<>();
+        index.processAllKeys(NAME, key -> {
+            // 只取文件名 key，b/c 这样的 key 对应的文件已经包含在 c 中
+            if (key.indexOf('/') < 0)
+                fileNames.add(key);
+            return true;
+        }, project);
+
+        Set<String> names = new HashSet<>();
+        for (String fileName : fileNames) {
+            ProgressManager.checkCanceled();
+            for (VirtualFile file : index.getContainingFiles(NAME, fileName, scope)) {
+                // txt 文件只用来按路径查找，不在补全中列出
+                if (file.getFileType() == LuaFileType.INSTANCE)
+                    names.addAll(LuaFileUtil.getModuleNames(project, file));
+            }
+        }
+        String[] array = ArrayUtil.toStringArray(names);
+        Arrays.sort(array);
+        return array;
+    }
+
+    @NotNull
+    @Override
+    public ID<String, Void> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, Void, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, Void> map = new HashMap<>();
+            VirtualFile file = inputData.getFile();
+            String name = file.getNameWithoutExtension();
+            map.put(name, null);
+            VirtualFile parent = file.getParent();
+            if (parent != null)
+                map.put(parent.getName() + "/" + name, null);
+            return map;
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        // 有些 lua 文件的扩展名是 txt
+        return file -> file.getFileType() == LuaFileType.INSTANCE || "txt".equalsIgnoreCase(file.getExtension());
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return false;
+    }
+
+    @Override
+    public int getVersion() {
+        return LuaLanguage.INDEX_VERSION;
+    }
+}
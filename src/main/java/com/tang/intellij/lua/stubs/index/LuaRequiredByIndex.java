@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tang.intellij.lua.stubs.index;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StringStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.tang.intellij.lua.lang.LuaLanguage;
+import com.tang.intellij.lua.psi.LuaFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * require 的反向索引：模块名 -> require 它的文件
+ * 由 LuaFileType.indexStub 从 LuaFileStub 记录的 require 列表生成，不需要再遍历 PSI
+ */
+public class LuaRequiredByIndex extends StringStubIndexExtension<LuaFile> {
+
+    public static final StubIndexKey<String, LuaFile> KEY = StubIndexKey.createIndexKey("lua.index.required_by");
+
+    /**
+     * @param moduleName a.b.c
+     * @return require 了这个模块的文件
+     */
+    @NotNull
+    public static Collection<LuaFile> getRequiringFiles(@NotNull Project project, @NotNull String moduleName, @NotNull GlobalSearchScope scope) {
+        if (DumbService.isDumb(project))
+            return Collections.emptyList();
+        return StubIndex.getElements(KEY, moduleName, project, scope, LuaFile.class);
+    }
+
+    @Override
+    public int getVersion() {
+        return LuaLanguage.INDEX_VERSION;
+    }
+
+    @NotNull
+    @Override
+    public StubIndexKey<String, LuaFile> getKey() {
+        return KEY;
+    }
+}
@@ -58,6 +58,7 @@ public class LuaClassMethodType extends IStubElementType<LuaClassMethodStub, Lua
         String clazzName = expr.getText();
         SearchContext searchContext = new SearchContext(methodDef.getProject()).setCurrentStubFile(methodDef.getContainingFile());
 
+        // 类名是索引的 key，只在本文件内推断
         LuaTypeSet typeSet = expr.guessType(searchContext);
         if (typeSet != null) {
             LuaType type = typeSet.getPerfect();
@@ -65,7 +66,7 @@ public class LuaClassMethodType extends IStubElementType<LuaClassMethodStub, Lua
                 clazzName = type.getClassName();
         }
 
-        LuaTypeSet returnTypeSet = LuaPsiImplUtil.guessReturnTypeSetOriginal(methodDef, searchContext);
+        LuaTypeSet returnTypeSet = LuaPsiImplUtil.getDeclaredReturnTypeSet(methodDef, searchContext);
         LuaParamInfo[] params = LuaPsiImplUtil.getParamsOriginal(methodDef);
 
         boolean isStatic = methodName.getDot() != null;
@@ -93,7 +94,7 @@ public class LuaClassMethodType extends IStubElementType<LuaClassMethodStub, Lua
 
         // params
         LuaParamInfo[] params = luaClassMethodStub.getParams();
-        stubOutputStream.writeByte(params.length);
+        stubOutputStream.writeVarInt(params.length);
         for (LuaParamInfo param : params) {
             LuaParamInfo.serialize(param, stubOutputStream);
         }
@@ -113,7 +114,7 @@ public class LuaClassMethodType extends IStubElementType<LuaClassMethodStub, Lua
         StringRef shortName = stubInputStream.readName();
 
         // params
-        int len = stubInputStream.readByte();
+        int len = stubInputStream.readVarInt();
         LuaParamInfo[] params = new LuaParamInfo[len];
         for (int i = 0; i < len; i++) {
             params[i] = LuaParamInfo.deserialize(stubInputStream);
@@ -134,6 +135,7 @@ public class LuaClassMethodType extends IStubElementType<LuaClassMethodStub, Lua
                 indexSink.occurrence(LuaClassMethodIndex.KEY, className + ".static." + shortName);
             } else {
                 indexSink.occurrence(LuaClassMethodIndex.KEY, className);
+                indexSink.occurrence(LuaClassMethodIndex.KEY, className + ":" + shortName);
             }
             indexSink.occurrence(LuaShortNameIndex.KEY, shortName);
         }
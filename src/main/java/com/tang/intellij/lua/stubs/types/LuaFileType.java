@@ -19,15 +19,17 @@ package com.tang.intellij.lua.stubs.types;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.StubBuilder;
 import com.intellij.psi.stubs.DefaultStubBuilder;
+import com.intellij.psi.stubs.IndexSink;
 import com.intellij.psi.stubs.StubElement;
 import com.intellij.psi.stubs.StubInputStream;
 import com.intellij.psi.stubs.StubOutputStream;
 import com.intellij.psi.tree.IStubFileElementType;
+import com.intellij.util.io.StringRef;
 import com.tang.intellij.lua.lang.LuaLanguage;
 import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaFile;
-import com.tang.intellij.lua.search.SearchContext;
 import com.tang.intellij.lua.stubs.LuaFileStub;
+import com.tang.intellij.lua.stubs.index.LuaRequiredByIndex;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
@@ -60,17 +62,41 @@ public class LuaFileType extends IStubFileElementType<LuaFileStub> {
         };
     }
 
+    @Override
+    public int getStubVersion() {
+        return LuaLanguage.INDEX_VERSION;
+    }
+
+    @Override
+    public void indexStub(@NotNull LuaFileStub stub, @NotNull IndexSink sink) {
+        for (String module : stub.getRequiredModules()) {
+            sink.occurrence(LuaRequiredByIndex.KEY, module);
+        }
+    }
+
     @Override
     public void serialize(@NotNull LuaFileStub stub, @NotNull StubOutputStream dataStream) throws IOException {
-        LuaTypeSet returnedType = stub.getReturnedType(new SearchContext(stub.getProject()));
-        LuaTypeSet.serialize(returnedType, dataStream);
+        // 只记录本文件内能确定的部分，跨文件的部分由 returnedModule 在查询时组合
+        LuaTypeSet.serialize(stub.getReturnedType(), dataStream);
+        dataStream.writeName(stub.getReturnedModule());
+        String[] requiredModules = stub.getRequiredModules();
+        dataStream.writeVarInt(requiredModules.length);
+        for (String module : requiredModules) {
+            dataStream.writeName(module);
+        }
     }
 
     @NotNull
     @Override
     public LuaFileStub deserialize(@NotNull StubInputStream dataStream, StubElement parentStub) throws IOException {
         LuaTypeSet typeSet = LuaTypeSet.deserialize(dataStream);
-        return new LuaFileStub(null, typeSet);
+        String returnedModule = StringRef.toString(dataStream.readName());
+        int size = dataStream.readVarInt();
+        String[] requiredModules = new String[size];
+        for (int i = 0; i < size; i++) {
+            requiredModules[i] = StringRef.toString(dataStream.readName());
+        }
+        return new LuaFileStub(null, typeSet, returnedModule, requiredModules);
     }
 
     @NotNull
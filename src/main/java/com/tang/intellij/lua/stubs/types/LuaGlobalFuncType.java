@@ -56,7 +56,7 @@ public class LuaGlobalFuncType extends IStubElementType<LuaGlobalFuncStub, LuaGl
         PsiElement nameRef = globalFuncDef.getNameIdentifier();
         assert nameRef != null;
         SearchContext searchContext = new SearchContext(globalFuncDef.getProject()).setCurrentStubFile(globalFuncDef.getContainingFile());
-        LuaTypeSet returnTypeSet = LuaPsiImplUtil.guessReturnTypeSetOriginal(globalFuncDef, searchContext);
+        LuaTypeSet returnTypeSet = LuaPsiImplUtil.getDeclaredReturnTypeSet(globalFuncDef, searchContext);
         LuaParamInfo[] params = LuaPsiImplUtil.getParamsOriginal(globalFuncDef);
 
         return new LuaGlobalFuncStubImpl(nameRef.getText(), params, returnTypeSet, stubElement);
@@ -84,7 +84,7 @@ public class LuaGlobalFuncType extends IStubElementType<LuaGlobalFuncStub, LuaGl
 
         // params
         LuaParamInfo[] params = luaGlobalFuncStub.getParams();
-        stubOutputStream.writeByte(params.length);
+        stubOutputStream.writeVarInt(params.length);
         for (LuaParamInfo param : params) {
             LuaParamInfo.serialize(param, stubOutputStream);
         }
@@ -98,7 +98,7 @@ public class LuaGlobalFuncType extends IStubElementType<LuaGlobalFuncStub, LuaGl
         StringRef name = stubInputStream.readName();
 
         // params
-        int len = stubInputStream.readByte();
+        int len = stubInputStream.readVarInt();
         LuaParamInfo[] params = new LuaParamInfo[len];
         for (int i = 0; i < len; i++) {
             params[i] = LuaParamInfo.deserialize(stubInputStream);
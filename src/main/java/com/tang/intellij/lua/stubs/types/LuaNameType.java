@@ -20,6 +20,7 @@ import com.intellij.lang.ASTNode;
 import com.intellij.psi.stubs.*;
 import com.intellij.util.io.StringRef;
 import com.tang.intellij.lua.lang.LuaLanguage;
+import com.tang.intellij.lua.lang.type.LuaTypeSet;
 import com.tang.intellij.lua.psi.LuaNameExpr;
 import com.tang.intellij.lua.psi.LuaVar;
 import com.tang.intellij.lua.psi.LuaVarList;
@@ -72,13 +73,25 @@ public class LuaNameType extends IStubElementType<LuaNameStub, LuaNameExpr> {
     @Override
     public void serialize(@NotNull LuaNameStub luaNameStub, @NotNull StubOutputStream stubOutputStream) throws IOException {
         stubOutputStream.writeName(luaNameStub.getName());
+        stubOutputStream.writeBoolean(luaNameStub.isGlobal());
+        if (luaNameStub.isGlobal()) {
+            LuaTypeSet.serialize(luaNameStub.getValueType(), stubOutputStream);
+            stubOutputStream.writeName(luaNameStub.getRequiredModule());
+        }
     }
 
     @NotNull
     @Override
     public LuaNameStub deserialize(@NotNull StubInputStream stubInputStream, StubElement stubElement) throws IOException {
         StringRef nameRef = stubInputStream.readName();
-        return new LuaNameStubImpl(StringRef.toString(nameRef), stubElement, this);
+        boolean global = stubInputStream.readBoolean();
+        LuaTypeSet valueType = null;
+        StringRef requiredModule = null;
+        if (global) {
+            valueType = LuaTypeSet.deserialize(stubInputStream);
+            requiredModule = stubInputStream.readName();
+        }
+        return new LuaNameStubImpl(StringRef.toString(nameRef), global, valueType, StringRef.toString(requiredModule), stubElement, this);
     }
 
     @Override
@@ -0,0 +1,14 @@
+function helper()
+end
+
+function helper()
+end
+
+local function use()
+    helper()
+    undefinedFunc()
+    return UsedGlobal
+end
+
+UnusedGlobal = 1
+UsedGlobal = 2
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hierarchy;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.tang.intellij.lua.psi.search.LuaClassInheritorsSearch;
+
+/**
+ * 子类查找，包括循环继承和很深的继承链
+ */
+public class TestInheritors extends LightCodeInsightFixtureTestCase {
+
+    public void testInheritorSearchWithCyclicHierarchy() {
+        final int depth = 300;
+        StringBuilder sb = new StringBuilder();
+        // 循环继承 CycleA -> CycleC -> CycleB -> CycleA
+        sb.append("---@class CycleA : CycleC\nlocal a = {}\n");
+        sb.append("---@class CycleB : CycleA\nlocal b = {}\n");
+        sb.append("---@class CycleC : CycleB\nlocal c = {}\n");
+        // 很深的单链 Chain0 <- Chain1 <- ...
+        sb.append("---@class Chain0\nlocal chain0 = {}\n");
+        for (int i = 1; i < depth; i++) {
+            sb.append("---@class Chain").append(i).append(" : Chain").append(i - 1)
+                    .append("\nlocal chain").append(i).append(" = {}\n");
+        }
+        myFixture.addFileToProject("hierarchy.lua", sb.toString());
+        Project project = getProject();
+        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+
+        assertEquals(2, LuaClassInheritorsSearch.search(scope, project, "CycleA").findAll().size());
+        assertEquals(1, LuaClassInheritorsSearch.search(scope, project, "CycleA", false).findAll().size());
+        assertEquals(depth - 1, LuaClassInheritorsSearch.search(scope, project, "Chain0").findAll().size());
+        assertEquals(1, LuaClassInheritorsSearch.search(scope, project, "Chain0", false).findAll().size());
+        assertNotNull(LuaClassInheritorsSearch.search(scope, project, "Chain0").findFirst());
+        assertNull(LuaClassInheritorsSearch.search(scope, project, "Chain" + (depth - 1)).findFirst());
+    }
+}
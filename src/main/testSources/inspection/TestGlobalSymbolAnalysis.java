@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package inspection;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.ex.GlobalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.InspectionTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.testFramework.fixtures.impl.CodeInsightTestFixtureImpl;
+import com.intellij.testFramework.fixtures.impl.GlobalInspectionContextForTests;
+import com.tang.intellij.lua.codeInsight.inspection.GlobalSymbolAnalysis;
+import com.tang.intellij.lua.search.LuaGlobalSymbolTable;
+
+/**
+ * 项目级的全局符号检查
+ */
+public class TestGlobalSymbolAnalysis extends LightCodeInsightFixtureTestCase {
+
+    @Override
+    protected String getTestDataPath() {
+        return "src/main/testData/inspection";
+    }
+
+    public void testGlobalSymbol() {
+        myFixture.testInspection("globalSymbol", new GlobalInspectionToolWrapper(new GlobalSymbolAnalysis()));
+    }
+
+    public void testGlobalSymbolScope() throws Exception {
+        // 只检查 main.lua，other.lua 中的定义不应被报告
+        myFixture.copyDirectoryToProject("globalSymbol/src", "");
+        PsiFile file = myFixture.configureFromTempProjectFile("main.lua");
+        AnalysisScope scope = new AnalysisScope(file);
+        GlobalInspectionToolWrapper toolWrapper = new GlobalInspectionToolWrapper(new GlobalSymbolAnalysis());
+        InspectionManagerEx manager = (InspectionManagerEx) InspectionManager.getInstance(getProject());
+        GlobalInspectionContextForTests context = CodeInsightTestFixtureImpl.createGlobalContextForTool(scope, getProject(), manager, toolWrapper);
+        InspectionTestUtil.runTool(toolWrapper, scope, context);
+        InspectionTestUtil.compareToolResults(context, toolWrapper, false, getTestDataPath() + "/globalSymbolScope");
+    }
+
+    public void testGlobalSymbolTableWith500Files() {
+        final int fileCount = 500;
+        for (int i = 0; i < fileCount; i++) {
+            int next = (i + 1) % fileCount;
+            myFixture.addFileToProject("globals" + i + ".lua",
+                    "GlobalVar" + i + " = 1\n" +
+                    "function globalFunc" + i + "()\n" +
+                    "    local localVar = GlobalVar" + next + "\n" +
+                    "    globalFunc" + next + "(localVar)\n" +
+                    "    undefinedFunc" + i + "()\n" +
+                    "end\n" +
+                    (i < 2 ? "function duplicateFunc() end\n" : ""));
+        }
+        LuaGlobalSymbolTable table = LuaGlobalSymbolTable.build(getProject(), null);
+
+        assertEquals(fileCount, table.getFilesWithUndefinedUsages().size());
+        for (VirtualFile file : table.getFilesWithUndefinedUsages()) {
+            assertEquals(1, table.getUndefinedUsages(file).size());
+        }
+        assertTrue(table.isUsed("globalFunc0"));
+        assertTrue(table.isUsed("GlobalVar0"));
+        assertFalse(table.isUsed("duplicateFunc"));
+        assertFalse(table.isUsed("localVar"));
+
+        int[] duplicates = new int[1];
+        table.processProjectDefinitions((name, vars, funcs) -> {
+            if (funcs.size() > 1)
+                duplicates[0]++;
+        });
+        assertEquals(1, duplicates[0]);
+    }
+}
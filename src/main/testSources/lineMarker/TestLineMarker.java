@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lineMarker;
+
+import com.intellij.codeInsight.daemon.LineMarkerInfo;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.tang.intellij.lua.codeInsight.LuaLineMarkerProvider;
+import com.tang.intellij.lua.psi.LuaCallExpr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 递归调用的 line marker
+ */
+public class TestLineMarker extends LightCodeInsightFixtureTestCase {
+
+    public void testRecursiveCallMarkersWith50kCalls() {
+        final int funcCount = 1000;
+        final int callsPerFunc = 50;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < funcCount; i++) {
+            sb.append("function recursive").append(i).append("(n)\n");
+            // 第一个调用是递归，其它调用别的函数
+            sb.append("    recursive").append(i).append("(n - 1)\n");
+            for (int j = 1; j < callsPerFunc; j++) {
+                sb.append("    recursive").append((i + j) % funcCount).append("(n)\n");
+            }
+            sb.append("end\n");
+        }
+        PsiFile file = myFixture.configureByText("recursive.lua", sb.toString());
+        List<PsiElement> calls = new ArrayList<>(PsiTreeUtil.findChildrenOfType(file, LuaCallExpr.class));
+        assertEquals(funcCount * callsPerFunc, calls.size());
+
+        List<LineMarkerInfo> markers = new ArrayList<>();
+        new LuaLineMarkerProvider().collectSlowLineMarkers(calls, markers);
+        assertEquals(funcCount, markers.size());
+        for (LineMarkerInfo marker : markers) {
+            PsiElement call = marker.getElement();
+            assertNotNull(call);
+            PsiReference reference = ((LuaCallExpr) call).getExpr().getReference();
+            assertNotNull(reference);
+            assertTrue(PsiTreeUtil.isAncestor(reference.resolve(), call, true));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package navigation;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameUtil;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.indexing.FindSymbolParameters;
+import com.tang.intellij.lua.editor.LuaClassNavigationContributor;
+import com.tang.intellij.lua.editor.LuaSymbolNavigationContributor;
+import com.tang.intellij.lua.search.SearchContext;
+import com.tang.intellij.lua.stubs.index.LuaShortNameIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Goto Symbol / Goto Class
+ */
+public class TestGotoSymbol extends LightCodeInsightFixtureTestCase {
+
+    public void testGotoSymbolWith500kNames() {
+        final int fileCount = 100;
+        final int namesPerFile = 5000;
+        final int nameCount = fileCount * namesPerFile;
+        final int itemsPerKeystroke = 50;
+        for (int i = 0; i < fileCount; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < namesPerFile; j++) {
+                sb.append("function zq").append(i * namesPerFile + j).append("() end\n");
+            }
+            myFixture.addFileToProject("symbols" + i + ".lua", sb.toString());
+        }
+        Project project = getProject();
+        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        LuaSymbolNavigationContributor contributor = new LuaSymbolNavigationContributor();
+
+        Set<String> allNames = new HashSet<>();
+        LuaShortNameIndex.getInstance().processAllKeys(project, s -> {
+            allNames.add(s);
+            return true;
+        });
+
+        String[] patterns = { "zq", "zq4", "zq49", "zq499", "zq4999", "zq49999" };
+        for (String pattern : patterns) {
+            MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+            List<String> expected = new ArrayList<>();
+            for (String name : allNames) {
+                if (matcher.matches(name))
+                    expected.add(name);
+            }
+            List<String> matched = new ArrayList<>();
+            contributor.processNames(name -> {
+                if (matcher.matches(name))
+                    matched.add(name);
+                return true;
+            }, scope, null);
+            Collections.sort(expected);
+            Collections.sort(matched);
+            assertEquals(expected, matched);
+
+            FindSymbolParameters parameters = FindSymbolParameters.wrap(pattern, project, true);
+            for (String name : matched.subList(0, Math.min(itemsPerKeystroke, matched.size()))) {
+                int[] items = { 0 };
+                contributor.processElementsWithName(name, item -> {
+                    items[0]++;
+                    return true;
+                }, parameters);
+                assertEquals(LuaShortNameIndex.find(name, new SearchContext(project)).size(), items[0]);
+            }
+        }
+        MinusculeMatcher all = NameUtil.buildMatcher("zq", NameUtil.MatchingCaseSensitivity.NONE);
+        int[] count = { 0 };
+        contributor.processNames(name -> {
+            if (all.matches(name))
+                count[0]++;
+            return true;
+        }, scope, null);
+        assertEquals(nameCount, count[0]);
+    }
+
+    public void testGotoClassByNameAndScope() {
+        myFixture.addFileToProject("classes.lua", "---@class GotoClassA\nlocal a = {}\n");
+        Project project = getProject();
+        LuaClassNavigationContributor classContributor = new LuaClassNavigationContributor();
+        CommonProcessors.CollectProcessor<String> classNames = new CommonProcessors.CollectProcessor<>();
+        classContributor.processNames(classNames, GlobalSearchScope.projectScope(project), null);
+        assertTrue(classNames.getResults().contains("GotoClassA"));
+        assertEquals(1, classContributor.getItemsByName("GotoClassA", "GotoClassA", project, false).length);
+    }
+}
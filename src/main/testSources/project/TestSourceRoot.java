@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package project;
+
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.tang.intellij.lua.project.LuaSourceRootTrie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 文件 -> 源码根目录的查找
+ */
+public class TestSourceRoot extends LightCodeInsightFixtureTestCase {
+
+    public void testSourceRootLookupWith200Modules() {
+        final int moduleCount = 200;
+        final int lookupCount = 100000;
+        List<String> rootUrls = new ArrayList<>();
+        LuaSourceRootTrie<String> trie = new LuaSourceRootTrie<>();
+        for (int i = 0; i < moduleCount; i++) {
+            String rootPath = "/work/game/modules/module" + i + "/src";
+            rootUrls.add("file://" + rootPath);
+            trie.add(rootPath, rootPath);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < lookupCount; i++) {
+            String filePath = "/work/game/modules/module" + random.nextInt(moduleCount) + "/src/logic/ui/panel" + i + ".lua";
+            // 和逐个根目录比较 url 前缀的结果一致
+            String url = "file://" + filePath;
+            String expected = null;
+            for (String rootUrl : rootUrls) {
+                if (url.startsWith(rootUrl)) {
+                    expected = url.substring(rootUrl.length() + 1);
+                    break;
+                }
+            }
+            String root = trie.find(filePath);
+            assertNotNull(root);
+            assertEquals(expected, filePath.substring(root.length() + 1));
+        }
+        assertTrue(trie.isRoot("/work/game/modules/module7/src"));
+        assertFalse(trie.isRoot("/work/game/modules/module7"));
+        assertNull(trie.find("/work/other/a.lua"));
+        // module1 不是 module10 的前缀
+        assertEquals("/work/game/modules/module10/src", trie.find("/work/game/modules/module10/src/a.lua"));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package resolve;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.ProjectAndLibrariesScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.tang.intellij.lua.psi.LuaClassMethodDef;
+import com.tang.intellij.lua.psi.LuaLocalUsages;
+import com.tang.intellij.lua.psi.LuaNameDef;
+import com.tang.intellij.lua.search.SearchContext;
+import com.tang.intellij.lua.stubs.index.LuaClassMethodIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 方法按 Class:name 查找，local 变量的引用计数
+ */
+public class TestResolve extends LightCodeInsightFixtureTestCase {
+
+    public void testMethodResolveByCompositeKey() {
+        final int methodCount = 2000;
+        final int lookupCount = 200;
+        StringBuilder sb = new StringBuilder("---@class BigClass\nBigClass = {}\n");
+        for (int i = 0; i < methodCount; i++) {
+            sb.append("function BigClass:method").append(i).append("() end\n");
+        }
+        myFixture.addFileToProject("bigClass.lua", sb.toString());
+        Project project = getProject();
+
+        for (int i = 0; i < lookupCount; i++) {
+            String name = "method" + (i * (methodCount / lookupCount));
+            // 和取出类的所有方法再逐个比较名字的结果一致
+            LuaClassMethodDef expected = null;
+            Collection<LuaClassMethodDef> list = LuaClassMethodIndex.getInstance().get("BigClass", project, new ProjectAndLibrariesScope(project));
+            for (LuaClassMethodDef def : list) {
+                if (name.equals(def.getName())) {
+                    expected = def;
+                    break;
+                }
+            }
+            assertNotNull(expected);
+            assertEquals(expected, LuaClassMethodIndex.findMethodWithName("BigClass", name, new SearchContext(project)));
+        }
+        assertNull(LuaClassMethodIndex.findMethodWithName("BigClass", "method" + methodCount, new SearchContext(project)));
+    }
+
+    public void testLocalUsagesWith20kLocals() {
+        final int localCount = 20000;
+        final int sampleCount = 1000;
+        // 奇数行引用上一行的变量，所以偶数下标的变量都被使用
+        StringBuilder sb = new StringBuilder("local v0 = 0\n");
+        for (int i = 1; i < localCount; i++) {
+            if (i % 2 == 1)
+                sb.append("local v").append(i).append(" = v").append(i - 1).append("\n");
+            else
+                sb.append("local v").append(i).append(" = ").append(i).append("\n");
+        }
+        PsiFile file = myFixture.configureByText("bigLocals.lua", sb.toString());
+        List<LuaNameDef> nameDefs = new ArrayList<>(PsiTreeUtil.findChildrenOfType(file, LuaNameDef.class));
+        assertEquals(localCount, nameDefs.size());
+
+        LuaLocalUsages usages = LuaLocalUsages.getInstance(file);
+        int unused = 0;
+        for (int i = 0; i < localCount; i++) {
+            LuaNameDef nameDef = nameDefs.get(i);
+            if (!usages.isUsed(nameDef))
+                unused++;
+            // 和 ReferencesSearch 的结果一致，只取样一部分
+            if (i < sampleCount)
+                assertEquals(ReferencesSearch.search(nameDef, nameDef.getUseScope()).findAll().size(), usages.getUsageCount(nameDef));
+        }
+        assertEquals(localCount / 2, unused);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017. tangzx(love.tangzx@qq.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stubs;
+
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.io.AbstractStringEnumerator;
+import com.tang.intellij.lua.lang.type.LuaType;
+import com.tang.intellij.lua.lang.type.LuaTypeSet;
+import com.tang.intellij.lua.psi.LuaParamInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 参数信息、类型集合的 stub 编码
+ */
+public class TestStubEncoding extends LightCodeInsightFixtureTestCase {
+
+    public void testStubEncodingSize() throws IOException {
+        final int funcCount = 50000;
+        // 固定种子，生成函数的参数和返回类型
+        Random random = new Random(42);
+        String[] typeNames = { "number", "string", "boolean", "table", "Player", "Vector3", "UnityEngine.GameObject" };
+        List<LuaParamInfo[]> paramsList = new ArrayList<>();
+        List<LuaTypeSet> returnList = new ArrayList<>();
+        for (int i = 0; i < funcCount; i++) {
+            LuaParamInfo[] params = new LuaParamInfo[random.nextInt(5)];
+            for (int j = 0; j < params.length; j++) {
+                LuaParamInfo param = new LuaParamInfo();
+                param.setName("param" + j);
+                param.setOptional(random.nextInt(4) == 0);
+                String[] types = new String[random.nextInt(3)];
+                for (int k = 0; k < types.length; k++)
+                    types[k] = typeNames[random.nextInt(typeNames.length)];
+                param.setTypes(types);
+                params[j] = param;
+            }
+            paramsList.add(params);
+            LuaTypeSet returnSet = null;
+            if (random.nextInt(5) != 0) {
+                returnSet = LuaTypeSet.create(LuaType.create(typeNames[random.nextInt(typeNames.length)], null));
+                if (random.nextInt(10) == 0)
+                    returnSet = returnSet.union(LuaType.create("Class" + i, "Base", "Class" + i));
+            }
+            returnList.add(returnSet);
+        }
+
+        MemoryStringEnumerator names = new MemoryStringEnumerator();
+        ByteArrayOutputStream legacyBytes = new ByteArrayOutputStream();
+        StubOutputStream legacyStream = new StubOutputStream(legacyBytes, names);
+        ByteArrayOutputStream compactBytes = new ByteArrayOutputStream();
+        StubOutputStream compactStream = new StubOutputStream(compactBytes, names);
+        for (int i = 0; i < funcCount; i++) {
+            writeLegacy(paramsList.get(i), returnList.get(i), legacyStream);
+
+            LuaParamInfo[] params = paramsList.get(i);
+            compactStream.writeVarInt(params.length);
+            for (LuaParamInfo param : params)
+                LuaParamInfo.serialize(param, compactStream);
+            LuaTypeSet.serialize(returnList.get(i), compactStream);
+        }
+        legacyStream.flush();
+        compactStream.flush();
+
+        // 新格式能读回来
+        StubInputStream in = new StubInputStream(new ByteArrayInputStream(compactBytes.toByteArray()), names);
+        for (int i = 0; i < funcCount; i++) {
+            LuaParamInfo[] params = paramsList.get(i);
+            assertEquals(params.length, in.readVarInt());
+            for (LuaParamInfo param : params) {
+                LuaParamInfo read = LuaParamInfo.deserialize(in);
+                assertEquals(param.getName(), read.getName());
+                assertEquals(param.isOptional(), read.isOptional());
+                assertTrue(Arrays.equals(param.getTypes(), read.getTypes()));
+            }
+            LuaTypeSet returnSet = returnList.get(i);
+            LuaTypeSet read = LuaTypeSet.deserialize(in);
+            if (returnSet == null)
+                assertNull(read);
+            else
+                assertEquals(returnSet.getTypes(), read.getTypes());
+        }
+
+        assertTrue(compactBytes.size() < legacyBytes.size());
+    }
+
+    /**
+     * INDEX_VERSION 12 之前的格式，只用来对比大小
+     */
+    private static void writeLegacy(LuaParamInfo[] params, LuaTypeSet returnSet, StubOutputStream out) throws IOException {
+        out.writeByte(params.length);
+        for (LuaParamInfo param : params) {
+            out.writeName(param.getName());
+            out.writeBoolean(param.isOptional());
+            out.writeByte(param.getTypes().length);
+            for (String type : param.getTypes())
+                out.writeName(type);
+        }
+        out.writeBoolean(returnSet != null);
+        if (returnSet != null) {
+            out.writeInt(returnSet.getTypes().size());
+            for (LuaType type : returnSet.getTypes()) {
+                out.writeBoolean(type.isAnonymous());
+                out.writeName(type.getClassName());
+                out.writeName(type.getAliasName());
+                out.writeName(type.getSuperClassName());
+            }
+        }
+    }
+
+    private static class MemoryStringEnumerator implements AbstractStringEnumerator {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        @Override
+        public int enumerate(String value) {
+            if (value == null)
+                return 0;
+            return ids.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size();
+            });
+        }
+
+        @Override
+        public String valueOf(int idx) {
+            return idx == 0 ? null : values.get(idx - 1);
+        }
+
+        @Override
+        public void markCorrupted() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isDirty() {
+            return false;
+        }
+
+        @Override
+        public void force() {
+        }
+    }
+}